@@ -0,0 +1,120 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.go.sgf.Sgf;
+
+// BenchmarkPositions builds the positions that the benchmarks measure.  Realistic positions come from the self-play
+// SGFs in the directory named by the "goai.benchmark.sgfs" system property, "sgfs" by default.  Where there are not
+// enough SGFs of a board size, the rest are taken from games of random legal moves other than the pass.  Everything is
+// seeded, so that every fork and every run measures the same positions.
+final class BenchmarkPositions {
+    static final long SEED = 20170224L;
+    
+    // A third of the board is about where a 9x9 game's middle game starts.
+    static Game createMiddleGame( int boardSize ) {
+        return playRandomly(boardSize, boardSize * boardSize / 3, SEED);
+    }
+    
+    static Game playRandomly( int boardSize, int moves, long seed ) {
+        Random random = new Random(seed);
+        Game game = Game.newBuilder(boardSize).build();
+        for (int i = 0; i < moves; ++i) {
+            List<Move> candidates = new ArrayList<>(game.getLegalMoves());
+            candidates.remove(PASS);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            game = game.play(candidates.get(random.nextInt(candidates.size())));
+        }
+        return game;
+    }
+    
+    // Returns count positions, each after at least one move, spread evenly over every position of the sampled games.
+    static List<Game> samplePositions( int boardSize, int count ) throws IOException {
+        List<Game> positions = new ArrayList<>();
+        for (Game game : readGames(boardSize)) {
+            collectPositions(game, positions);
+        }
+        
+        Random random = new Random(SEED);
+        while (positions.size() < count) {
+            int moves = boardSize * boardSize / 4 + random.nextInt(boardSize * boardSize / 2);
+            collectPositions(playRandomly(boardSize, moves, random.nextLong()), positions);
+        }
+        
+        List<Game> sample = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            sample.add(positions.get((int) ((long) positions.size() * i / count)));
+        }
+        return sample;
+    }
+    
+    private static List<Game> readGames( int boardSize ) throws IOException {
+        Path directory = Paths.get(System.getProperty("goai.benchmark.sgfs", "sgfs"));
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.sgf")) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        
+        List<Game> games = new ArrayList<>();
+        for (Path file : files) {
+            Game game = Sgf.readFromFile(file.toFile());
+            if (game.getDimension() == boardSize) {
+                games.add(game);
+            }
+        }
+        return games;
+    }
+    
+    // The positions are collected from the first move on, and a finished Game's last position is left out since it
+    // cannot be evaluated.
+    private static void collectPositions( Game game, List<Game> positions ) {
+        List<Game> line = new ArrayList<>();
+        for (Game cursor = game; cursor.getMovesPlayed() > 0; cursor = cursor.getPreviousState()) {
+            if (!cursor.isOver()) {
+                line.add(cursor);
+            }
+        }
+        Collections.reverse(line);
+        positions.addAll(line);
+    }
+    
+    // Replays the Game's moves turned a quarter turn, which gives the same position in another of its eight forms.
+    static Game rotate( Game game ) {
+        List<Move> moves = new ArrayList<>();
+        for (Game cursor = game; cursor.getMovesPlayed() > 0; cursor = cursor.getPreviousState()) {
+            moves.add(cursor.getPreviousMove());
+        }
+        Collections.reverse(moves);
+        
+        int dimension = game.getDimension();
+        Game rotated = Game.newBuilder(dimension).build();
+        for (Move move : moves) {
+            if (move != PASS) {
+                Coordinate coordinate = (Coordinate) move;
+                move = Coordinate.get(dimension - coordinate.getRow() + 1, coordinate.getColumn());
+            }
+            rotated = rotated.play(move);
+        }
+        return rotated;
+    }
+}
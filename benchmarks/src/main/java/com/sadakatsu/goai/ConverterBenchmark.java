@@ -0,0 +1,90 @@
+package com.sadakatsu.goai;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+
+// ConverterBenchmark measures finding the Converter between a sampled position and the same position turned a quarter
+// turn, and converting a Score for each of the position's legal moves with it.
+// The Scores' values are random, since converting does not depend upon them.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ConverterBenchmark {
+    private static final int POSITIONS = 64;
+    
+    @Param({ "9", "19" })
+    public int boardSize;
+    
+    private ZobristHash[] starts;
+    private ZobristHash[] ends;
+    private Score[][] scores;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Game> positions = BenchmarkPositions.samplePositions(boardSize, POSITIONS);
+        Random random = new Random(BenchmarkPositions.SEED);
+        
+        starts = new ZobristHash[positions.size()];
+        ends = new ZobristHash[positions.size()];
+        scores = new Score[positions.size()][];
+        for (int i = 0; i < positions.size(); ++i) {
+            Game position = positions.get(i);
+            starts[i] = new ZobristHash(position);
+            ends[i] = new ZobristHash(BenchmarkPositions.rotate(position));
+            
+            // The cache canonicalizes every hash when it stores or looks it up, before a Converter is needed.
+            starts[i].canonicalize();
+            ends[i].canonicalize();
+            
+            int count = 0;
+            scores[i] = new Score[position.getLegalMoves().size()];
+            for (Move move : position.getLegalMoves()) {
+                scores[i][count++] = Score.createFromRawScores(move, random.nextDouble(), random.nextDouble());
+            }
+        }
+    }
+    
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % starts.length;
+        return index;
+    }
+    
+    @Benchmark
+    public Converter getConverter() {
+        int index = nextIndex();
+        return Converter.getConverter(starts[index], ends[index]);
+    }
+    
+    @Benchmark
+    public void convert( Blackhole blackhole ) {
+        int index = nextIndex();
+        Converter converter = Converter.getConverter(starts[index], ends[index]);
+        for (Score score : scores[index]) {
+            blackhole.consume(converter.convert(score));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.sadakatsu.goai;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// InferenceBenchmark measures the steps of evaluating a middle game position: encoding it, running one hidden layer,
+// the whole network with and without parallelized layers, and reading the Scores out of the output layer.  Every
+// benchmark evaluates the same position with the same weights, and the GoAi has no EvaluationCache, so each
+// evaluation really runs the network.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InferenceBenchmark {
+    @Param({ "9", "13", "19" })
+    public int boardSize;
+    
+    @Param({ "3", "7" })
+    public int hiddenLayers;
+    
+    @Param({ "32", "64" })
+    public int channels;
+    
+    @Param({ "PER_NEURON", "IM2COL" })
+    public ConvolutionBackend backend;
+    
+    private GoAi ai;
+    private Game game;
+    private Set<Move> legalMoves;
+    private Tensor input;
+    private Evaluation evaluation;
+    private int hiddenLayer;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ai = GoAi.newBuilder(boardSize, hiddenLayers, channels)
+            .seed(BenchmarkPositions.SEED)
+            .backend(backend)
+            .build();
+        game = BenchmarkPositions.createMiddleGame(boardSize);
+        legalMoves = game.getLegalMoves();
+        input = ai.createInputTensor();
+        evaluation = ai.evaluate(game, false);
+        
+        // The layer between the first and the last has the network's typical shape.
+        hiddenLayer = ai.getLayers() / 2;
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        evaluation.release();
+        ai.close();
+    }
+    
+    @Benchmark
+    public Tensor encode() throws Exception {
+        ai.encode(game, legalMoves, input);
+        return input;
+    }
+    
+    @Benchmark
+    public Evaluation runLayer() {
+        ai.runLayer(evaluation, hiddenLayer, false);
+        return evaluation;
+    }
+    
+    // Releasing each Evaluation lets the next one reuse its workspace, as the game loop does.
+    @Benchmark
+    public Game evaluateSynchronously() {
+        Evaluation result = ai.evaluate(game, false);
+        Game evaluated = result.getGame();
+        result.release();
+        return evaluated;
+    }
+    
+    @Benchmark
+    public Game evaluateWithParallelizedLayers() {
+        Evaluation result = ai.evaluate(game, true);
+        Game evaluated = result.getGame();
+        result.release();
+        return evaluated;
+    }
+    
+    @Benchmark
+    public List<Score> getScores() {
+        evaluation.invalidateScoreTable();
+        return evaluation.getScores();
+    }
+}
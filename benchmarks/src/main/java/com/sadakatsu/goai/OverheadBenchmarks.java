@@ -0,0 +1,23 @@
+package com.sadakatsu.goai;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// OverheadBenchmarks runs the benchmarks of the work done around the network for every move with JMH's GC profiler,
+// which adds the allocation rate and the bytes allocated per operation to each benchmark's throughput.  Any JMH
+// command line options are passed through, e.g. "-p boardSize=19".
+public final class OverheadBenchmarks {
+    public static void main( String[] args ) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(ZobristHashBenchmark.class.getSimpleName())
+            .include(ConverterBenchmark.class.getSimpleName())
+            .include(ScoreRecommenderBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,97 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// ScoreRecommenderBenchmark measures choosing a move from an Evaluation of each sampled position, both in play and in
+// the dead stone search.  The network's output only needs to be plausible, so the positions are evaluated once by a
+// small network.  A recommender remembers its comparisons on each Evaluation, so they are forgotten before every
+// invocation to make it compare the Scores again.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ScoreRecommenderBenchmark {
+    private static final int POSITIONS = 64;
+    private static final int HIDDEN_LAYERS = 3;
+    private static final int CHANNELS = 16;
+    
+    @Param({ "9", "19" })
+    public int boardSize;
+    
+    @Param({ "BestRawScoreRecommender", "FuzzyBestLocalInvariantRecommender" })
+    public String recommenderName;
+    
+    private ScoreRecommender recommender;
+    private Evaluation[] evaluations;
+    private Score[] passes;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        recommender = "BestRawScoreRecommender".equals(recommenderName) ?
+            new BestRawScoreRecommender() :
+            new FuzzyBestLocalInvariantRecommender();
+        
+        List<Game> positions = BenchmarkPositions.samplePositions(boardSize, POSITIONS);
+        try (GoAi ai = GoAi.newBuilder(boardSize, HIDDEN_LAYERS, CHANNELS).seed(BenchmarkPositions.SEED).build()) {
+            evaluations = ai.evaluateAll(positions, false).toArray(new Evaluation[positions.size()]);
+        }
+        
+        passes = new Score[evaluations.length];
+        for (int i = 0; i < evaluations.length; ++i) {
+            passes[i] = evaluations[i].getScoreFor(PASS);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Evaluation evaluation : evaluations) {
+            evaluation.release();
+        }
+    }
+    
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % evaluations.length;
+        return index;
+    }
+    
+    @Benchmark
+    public Optional<Score> recommendGamePlay() {
+        Evaluation evaluation = evaluations[nextIndex()];
+        evaluation.clearComparisonStates();
+        return recommender.recommendGamePlay(evaluation);
+    }
+    
+    @Benchmark
+    public Optional<Score> recommendResolutionPlay() {
+        int index = nextIndex();
+        Evaluation evaluation = evaluations[index];
+        evaluation.clearComparisonStates();
+        return recommender.recommendResolutionPlay(evaluation, passes[index]);
+    }
+}
@@ -0,0 +1,74 @@
+package com.sadakatsu.goai;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sadakatsu.go.domain.Game;
+
+// ZobristHashBenchmark measures hashing a position from scratch, with and without choosing its canonical form, and
+// advancing the hash of the position before it.  Each invocation takes the next of the sampled positions in turn.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ZobristHashBenchmark {
+    private static final int POSITIONS = 256;
+    
+    @Param({ "9", "19" })
+    public int boardSize;
+    
+    private Game[] positions;
+    private ZobristHash[] previous;
+    private int next;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Game> sample = BenchmarkPositions.samplePositions(boardSize, POSITIONS);
+        positions = sample.toArray(new Game[sample.size()]);
+        
+        previous = new ZobristHash[positions.length];
+        for (int i = 0; i < positions.length; ++i) {
+            previous[i] = new ZobristHash(positions[i].getPreviousState());
+        }
+    }
+    
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) % positions.length;
+        return index;
+    }
+    
+    @Benchmark
+    public ZobristHash hash() {
+        return new ZobristHash(positions[nextIndex()]);
+    }
+    
+    @Benchmark
+    public ZobristHash hashAndCanonicalize() {
+        ZobristHash hash = new ZobristHash(positions[nextIndex()]);
+        hash.canonicalize();
+        return hash;
+    }
+    
+    @Benchmark
+    public ZobristHash advance() {
+        int index = nextIndex();
+        return previous[index].advance(positions[index]);
+    }
+}
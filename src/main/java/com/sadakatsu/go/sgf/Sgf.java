@@ -9,11 +9,15 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.sadakatsu.go.domain.Coordinate;
@@ -29,6 +33,10 @@ import com.sadakatsu.go.domain.outcome.Win;
 // TODO: This class is overly simplistic.  The SGF4 format allows for many interesting and useful properties.  This
 // class supports a bare minimum (and possibly less than that, based upon how I support free handicap placement).
 public class Sgf {
+    // A property's identifier and its first value.  The further values of list properties like TB are skipped, since
+    // they are not preceded by an identifier.
+    private static final Pattern PROPERTY = Pattern.compile("([A-Z]+)\\[((?:[^\\]\\\\]|\\\\.)*)\\]");
+    
     public static void writeToFile( Game game, File destination ) throws IOException {
         String representation = getAreaRepresentation(game);
         
@@ -53,6 +61,62 @@ public class Sgf {
         } finally {}
     }
     
+    // Replays the moves of an SGF like the ones writeToFile() writes and returns the Game after the last of them.  Only
+    // a single line of play without handicap stones is supported.  The territory and the result are not read, so a
+    // finished game is returned as it was before it was scored.
+    public static Game readFromFile( File source ) throws IOException {
+        String representation = new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8);
+        
+        Game game = null;
+        Matcher matcher = PROPERTY.matcher(representation);
+        while (matcher.find()) {
+            String property = matcher.group(1);
+            String value = matcher.group(2);
+            
+            if ("SZ".equals(property)) {
+                game = Game.newBuilder(Integer.parseInt(value.trim())).build();
+            } else if ("HA".equals(property) && Integer.parseInt(value.trim()) != 0) {
+                String message = String.format("%s has a handicap of %s, which is not supported.", source, value);
+                throw new IllegalArgumentException(message);
+            } else if ("B".equals(property) || "W".equals(property)) {
+                if (game == null) {
+                    String message = String.format("%s has a move before its board size.", source);
+                    throw new IllegalArgumentException(message);
+                } else if (game.isOver()) {
+                    break;
+                }
+                
+                Player expected = game.getCurrentPlayer();
+                if (expected != ("B".equals(property) ? BLACK : WHITE)) {
+                    String message = String.format(
+                        "%s has %s[%s] when %s is to play.",
+                        source,
+                        property,
+                        value,
+                        expected
+                    );
+                    throw new IllegalArgumentException(message);
+                }
+                game = game.play(parseMove(value, game.getDimension()));
+            }
+        }
+        
+        if (game == null) {
+            String message = String.format("%s does not have a board size.", source);
+            throw new IllegalArgumentException(message);
+        }
+        return game;
+    }
+    
+    // Both the empty value and "tt" are passes on boards of up to 19x19.
+    private static Move parseMove( String value, int dimension ) {
+        Move move = PASS;
+        if (!value.isEmpty() && !(dimension <= 19 && "tt".equals(value))) {
+            move = Coordinate.get(value.charAt(0) - 'a' + 1, value.charAt(1) - 'a' + 1);
+        }
+        return move;
+    }
+    
     private static String getAreaRepresentation( Game game ) {
         StringBuilder representation = new StringBuilder();
         
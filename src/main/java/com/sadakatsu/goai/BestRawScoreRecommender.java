@@ -1,6 +1,5 @@
 package com.sadakatsu.goai;
 
-import static com.sadakatsu.go.domain.Pass.PASS;
 import static com.sadakatsu.goai.ScoreRecommender.Relationship.*;
 
 import com.sadakatsu.goai.GoAi.Evaluation;
@@ -10,16 +9,21 @@ public class BestRawScoreRecommender extends ScoreRecommender {
     protected RecommenderComparisonState buildComparisonState( Evaluation evaluation ) {
         return new RecommenderComparisonState(evaluation);
     }
-
+    
     @Override
-    protected Relationship compareScores( Score first, Score second, RecommenderComparisonState state ) {
+    protected Relationship compareScores(
+        ScoreTable table,
+        int first,
+        int second,
+        RecommenderComparisonState state
+    ) {
         Relationship relationship;
         
-        int comparison = Double.compare(first.getRawResult(), second.getRawResult());
+        int comparison = Double.compare(table.getRawResult(first), table.getRawResult(second));
         if (comparison == 0) {
-            comparison = Double.compare(first.getRawPlayerScore(), second.getRawPlayerScore());
+            comparison = Double.compare(table.getRawPlayerScore(first), table.getRawPlayerScore(second));
             if (comparison == 0) {
-                comparison = (first.getMove() == PASS ? 1 : 0) + (second.getMove() == PASS ? -1 : 0);
+                comparison = (table.isPass(first) ? 1 : 0) + (table.isPass(second) ? -1 : 0);
             }
         }
         
@@ -33,7 +37,13 @@ public class BestRawScoreRecommender extends ScoreRecommender {
         
         return relationship;
     }
-
+    
+    // Double.compare() orders the raw values totally, so this Relationship is transitive.
+    @Override
+    protected boolean isRelationshipTransitive() {
+        return true;
+    }
+    
     @Override
     protected boolean doesFirstLoseTie( Score first, Score second, RecommenderComparisonState state ) {
         return false;
@@ -0,0 +1,181 @@
+package com.sadakatsu.goai;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.sadakatsu.goai.GoAi.Neuron;
+
+// Checkpoint reads and writes a GoAi's weights in a compact binary file, so that a GoAi can be reopened without
+// drawing its weights from its seed again and trained weights can be shipped.  Every value is little-endian:
+//
+//     bytes  0-3   the magic number "GOAI"
+//     bytes  4-7   the format version
+//     bytes  8-27  the boardSize, hiddenLayers, channels, input channels and a reserved 0, as ints
+//     bytes 28-35  the seed the weights were first drawn from, as a long
+//     bytes 36-39  padding to align the weights
+//     then         every Neuron's bias followed by its weights as doubles, layer by layer and Neuron by Neuron in the
+//                  order GoAi builds them
+//
+// Both reading and writing go through a memory-mapped file, so the weights are copied straight between the page cache
+// and the Neurons' arrays.
+final class Checkpoint {
+    private static final byte[] MAGIC = { 'G', 'O', 'A', 'I' };
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    
+    static Checkpoint open( Path path ) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("The checkpoint's Path may not be null.");
+        }
+        
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE || (size - HEADER_BYTES) % Double.BYTES != 0) {
+                String message = String.format("%s is not a GoAi checkpoint: its size is %d bytes.", path, size);
+                throw new IllegalArgumentException(message);
+            }
+            
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer mapping = channel.map(MapMode.READ_ONLY, 0, size);
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            
+            byte[] magic = new byte[MAGIC.length];
+            mapping.get(magic);
+            int version = mapping.getInt();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                String message = String.format(
+                    "%s is not a version %d GoAi checkpoint.  It starts with %s and claims version %d.",
+                    path,
+                    VERSION,
+                    Arrays.toString(magic),
+                    version
+                );
+                throw new IllegalArgumentException(message);
+            }
+            
+            int boardSize = mapping.getInt();
+            int hiddenLayers = mapping.getInt();
+            int channels = mapping.getInt();
+            int inputChannels = mapping.getInt();
+            mapping.getInt();
+            long seed = mapping.getLong();
+            if (inputChannels != GoAi.getInputChannelCount()) {
+                String message = String.format(
+                    "%s was written for %d input channels, but GoAi now encodes %d.",
+                    path,
+                    inputChannels,
+                    GoAi.getInputChannelCount()
+                );
+                throw new IllegalArgumentException(message);
+            }
+            
+            mapping.position(HEADER_BYTES);
+            DoubleBuffer weights = mapping.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            return new Checkpoint(path, boardSize, hiddenLayers, channels, seed, weights);
+        }
+    }
+    
+    static void write(
+        Path path,
+        int boardSize,
+        int hiddenLayers,
+        int channels,
+        long seed,
+        Neuron[][] network
+    ) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("The checkpoint's Path may not be null.");
+        }
+        
+        long parameters = 0;
+        for (Neuron[] layer : network) {
+            for (Neuron neuron : layer) {
+                parameters += 1 + neuron.weights.length;
+            }
+        }
+        long size = HEADER_BYTES + parameters * Double.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            String message = String.format("The checkpoint would need %d bytes, which is too many to map.", size);
+            throw new IllegalArgumentException(message);
+        }
+        
+        try (
+            FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            )
+        ) {
+            MappedByteBuffer mapping = channel.map(MapMode.READ_WRITE, 0, size);
+            mapping.order(ByteOrder.LITTLE_ENDIAN);
+            mapping.put(MAGIC);
+            mapping.putInt(VERSION);
+            mapping.putInt(boardSize);
+            mapping.putInt(hiddenLayers);
+            mapping.putInt(channels);
+            mapping.putInt(GoAi.getInputChannelCount());
+            mapping.putInt(0);
+            mapping.putLong(seed);
+            
+            mapping.position(HEADER_BYTES);
+            DoubleBuffer weights = mapping.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (Neuron[] layer : network) {
+                for (Neuron neuron : layer) {
+                    weights.put(neuron.bias);
+                    weights.put(neuron.weights);
+                }
+            }
+            mapping.force();
+        }
+    }
+    
+    private final Path path;
+    private final int boardSize;
+    private final int hiddenLayers;
+    private final int channels;
+    private final long seed;
+    private final DoubleBuffer weights;
+    
+    private Checkpoint( Path path, int boardSize, int hiddenLayers, int channels, long seed, DoubleBuffer weights ) {
+        this.path = path;
+        this.boardSize = boardSize;
+        this.hiddenLayers = hiddenLayers;
+        this.channels = channels;
+        this.seed = seed;
+        this.weights = weights;
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    int getBoardSize() {
+        return boardSize;
+    }
+    
+    int getHiddenLayers() {
+        return hiddenLayers;
+    }
+    
+    int getChannels() {
+        return channels;
+    }
+    
+    long getSeed() {
+        return seed;
+    }
+    
+    // Each call returns a new view of the weights, positioned at the first Neuron's bias.
+    DoubleBuffer getWeights() {
+        return weights.duplicate();
+    }
+}
@@ -0,0 +1,9 @@
+package com.sadakatsu.goai;
+
+// Selects how a GoAi computes its layers.  PER_NEURON runs every Neuron over every output cell one at a time.  IM2COL
+// lowers each layer's input into a matrix once, then computes all of the layer's channels and orientations together as
+// one cache-blocked matrix multiplication.  Both produce identical results.
+public enum ConvolutionBackend {
+    PER_NEURON,
+    IM2COL;
+}
@@ -0,0 +1,18 @@
+package com.sadakatsu.goai;
+
+// A ConvolutionEngine computes the activations (and orientations, where the layer's Neurons have them) of one layer of
+// a GoAi's network from the previous layer's activations.  It receives a batch of positions at once so that it can reuse
+// each Neuron's weights across the whole batch while they are in cache.
+interface ConvolutionEngine {
+    void runLayer(
+        int layer,
+        Tensor[] inputs,
+        Tensor[] activations,
+        int[][] orientations,
+        ConvolutionScratch scratch,
+        boolean parallelize
+    );
+    
+    // Rereads the Neurons' biases and weights after training changed them.  No layer may run while this does.
+    void refreshWeights();
+}
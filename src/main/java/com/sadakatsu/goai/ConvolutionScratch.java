@@ -0,0 +1,41 @@
+package com.sadakatsu.goai;
+
+// ConvolutionScratch holds the temporary matrices a ConvolutionEngine needs while it computes a layer.  The buffers grow
+// to the largest layer they are asked for and are reused from layer to layer.
+final class ConvolutionScratch {
+    private static final double[] EMPTY = new double[0];
+    private static final float[] SINGLE_EMPTY = new float[0];
+    
+    private double[] lowered = EMPTY;
+    private double[] products = EMPTY;
+    private float[] singleLowered = SINGLE_EMPTY;
+    private float[] singleProducts = SINGLE_EMPTY;
+    
+    double[] getLowered( int size ) {
+        if (lowered.length < size) {
+            lowered = new double[size];
+        }
+        return lowered;
+    }
+    
+    double[] getProducts( int size ) {
+        if (products.length < size) {
+            products = new double[size];
+        }
+        return products;
+    }
+    
+    float[] getSingleLowered( int size ) {
+        if (singleLowered.length < size) {
+            singleLowered = new float[size];
+        }
+        return singleLowered;
+    }
+    
+    float[] getSingleProducts( int size ) {
+        if (singleProducts.length < size) {
+            singleProducts = new float[size];
+        }
+        return singleProducts;
+    }
+}
@@ -0,0 +1,300 @@
+package com.sadakatsu.goai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// EvaluationBroker gathers the positions that many concurrent games want evaluated into batches for one GoAi.  A game
+// submits its position and receives a future; dispatcher threads take the waiting positions in batches and run each
+// batch through the network with a single evaluateAll(), so each Neuron's weights are loaded once per batch instead
+// of once per position.
+//
+// A dispatcher starts a batch with the oldest waiting position, then waits at most the maximum wait for more until
+// the batch is full.  A small maximum wait keeps a lone game from stalling; a larger one fills the batches better when
+// many games are running.  A single dispatcher parallelizes the network's layers across the GoAi's threads, while
+// several dispatchers each run their batches on their own thread.
+//
+// The previous Evaluation submitted with a position lets it be encoded incrementally, and must not be released until
+// the position's future completes.  submit() checks it, so an invalid previous Evaluation fails only its own position's
+// future.  Since a batch is evaluated together, the one failure that still spreads to every position of a batch is a
+// previous Evaluation released between submit() and its batch's dispatch.
+public final class EvaluationBroker implements PositionEvaluator, AutoCloseable {
+    public static final class EvaluationBrokerBuilder {
+        private final GoAi ai;
+        private int maximumBatchSize;
+        private long maximumWaitNanos;
+        private int dispatchers;
+        
+        private EvaluationBrokerBuilder( GoAi ai ) {
+            this.ai = ai;
+            this.maximumBatchSize = DEFAULT_MAXIMUM_BATCH_SIZE;
+            this.maximumWaitNanos = DEFAULT_MAXIMUM_WAIT_NANOS;
+            this.dispatchers = 1;
+        }
+        
+        public EvaluationBrokerBuilder maximumBatchSize( int maximumBatchSize ) {
+            if (maximumBatchSize < 1) {
+                String message = String.format(
+                    "The maximum batch size must be at least 1, but it was %d.",
+                    maximumBatchSize
+                );
+                throw new IllegalArgumentException(message);
+            }
+            this.maximumBatchSize = maximumBatchSize;
+            return this;
+        }
+        
+        public EvaluationBrokerBuilder maximumWait( long maximumWait, TimeUnit unit ) {
+            if (maximumWait < 0) {
+                String message = String.format("The maximum wait may not be negative, but it was %d.", maximumWait);
+                throw new IllegalArgumentException(message);
+            }
+            if (unit == null) {
+                throw new IllegalArgumentException("The TimeUnit may not be null.");
+            }
+            this.maximumWaitNanos = unit.toNanos(maximumWait);
+            return this;
+        }
+        
+        public EvaluationBrokerBuilder dispatchers( int dispatchers ) {
+            if (dispatchers < 1) {
+                String message = String.format(
+                    "The number of dispatchers must be at least 1, but it was %d.",
+                    dispatchers
+                );
+                throw new IllegalArgumentException(message);
+            }
+            this.dispatchers = dispatchers;
+            return this;
+        }
+        
+        // The returned EvaluationBroker's dispatchers are already running.
+        public EvaluationBroker build() {
+            return new EvaluationBroker(this);
+        }
+    }
+    
+    private static final class Request {
+        final Game game;
+        final Evaluation previous;
+        final CompletableFuture<Evaluation> future = new CompletableFuture<>();
+        
+        Request( Game game, Evaluation previous ) {
+            this.game = game;
+            this.previous = previous;
+        }
+    }
+    
+    private static final int DEFAULT_MAXIMUM_BATCH_SIZE = 32;
+    private static final long DEFAULT_MAXIMUM_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvaluationBroker.class);
+    
+    public static EvaluationBrokerBuilder newBuilder( GoAi ai ) {
+        if (ai == null) {
+            throw new IllegalArgumentException("The GoAi may not be null.");
+        }
+        return new EvaluationBrokerBuilder(ai);
+    }
+    
+    private final GoAi ai;
+    private final int maximumBatchSize;
+    private final long maximumWaitNanos;
+    private final boolean parallelize;
+    private final BlockingQueue<Request> pending = new LinkedBlockingQueue<>();
+    private final Thread[] dispatchers;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    
+    private volatile boolean closed;
+    
+    private EvaluationBroker( EvaluationBrokerBuilder builder ) {
+        this.ai = builder.ai;
+        this.maximumBatchSize = builder.maximumBatchSize;
+        this.maximumWaitNanos = builder.maximumWaitNanos;
+        this.parallelize = builder.dispatchers == 1;
+        
+        dispatchers = new Thread[builder.dispatchers];
+        for (int i = 0; i < dispatchers.length; ++i) {
+            Thread dispatcher = new Thread(this::dispatch, String.format("goai-evaluation-broker-%d", i));
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+            dispatchers[i] = dispatcher;
+        }
+    }
+    
+    public GoAi getAi() {
+        return ai;
+    }
+    
+    public int getMaximumBatchSize() {
+        return maximumBatchSize;
+    }
+    
+    public long getMaximumWaitNanos() {
+        return maximumWaitNanos;
+    }
+    
+    public long getBatches() {
+        return batches.get();
+    }
+    
+    public long getPositions() {
+        return positions.get();
+    }
+    
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0. : (double) positions.get() / count;
+    }
+    
+    public CompletableFuture<Evaluation> submit( Game game ) {
+        return submit(game, null);
+    }
+    
+    // The previous Evaluation may be null.  Otherwise it must have been made by this broker's GoAi of the Game before
+    // game's last Move; if it was not, only the returned future fails, rather than the batch the position would join.
+    public CompletableFuture<Evaluation> submit( Game game, Evaluation previous ) {
+        if (game == null || game.isOver()) {
+            String message = String.format("Received an unevaluatable game:\n%s", game);
+            throw new IllegalArgumentException(message);
+        }
+        
+        Request request = new Request(game, previous);
+        if (previous != null) {
+            try {
+                ai.validatePrevious(game, previous);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                request.future.completeExceptionally(e);
+                return request.future;
+            }
+        }
+        
+        pending.add(request);
+        
+        // A request that raced with close() would otherwise never be completed.
+        if (closed && pending.remove(request)) {
+            request.future.completeExceptionally(new IllegalStateException("The EvaluationBroker was closed."));
+        }
+        return request.future;
+    }
+    
+    // Blocks until the position's batch has been evaluated.
+    @Override
+    public Evaluation evaluate( Game game, Evaluation previous ) throws Exception {
+        try {
+            return submit(game, previous).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+    
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>(maximumBatchSize);
+        List<Game> games = new ArrayList<>(maximumBatchSize);
+        List<Evaluation> previous = new ArrayList<>(maximumBatchSize);
+        
+        while (!closed) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                failAll(batch);
+                break;
+            }
+            
+            for (Request request : batch) {
+                games.add(request.game);
+                previous.add(request.previous);
+            }
+            
+            try {
+                List<Evaluation> evaluations = ai.evaluateAll(games, previous, parallelize);
+                batches.incrementAndGet();
+                positions.addAndGet(batch.size());
+                for (int i = 0; i < batch.size(); ++i) {
+                    batch.get(i).future.complete(evaluations.get(i));
+                }
+            } catch (Throwable t) {
+                LOGGER.error("Evaluating a batch of {} positions failed.", batch.size(), t);
+                for (Request request : batch) {
+                    request.future.completeExceptionally(t);
+                }
+                
+                // The batch's callers have been told, but an Error leaves this dispatcher in no state to continue.
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+            }
+            
+            batch.clear();
+            games.clear();
+            previous.clear();
+        }
+    }
+    
+    private void collectBatch( List<Request> batch ) throws InterruptedException {
+        batch.add(pending.take());
+        
+        long deadline = System.nanoTime() + maximumWaitNanos;
+        while (batch.size() < maximumBatchSize) {
+            pending.drainTo(batch, maximumBatchSize - batch.size());
+            
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == maximumBatchSize || remaining <= 0) {
+                break;
+            }
+            
+            Request request = pending.poll(remaining, TimeUnit.NANOSECONDS);
+            if (request == null) {
+                break;
+            }
+            batch.add(request);
+        }
+    }
+    
+    private void failAll( List<Request> requests ) {
+        for (Request request : requests) {
+            request.future.completeExceptionally(new IllegalStateException("The EvaluationBroker was closed."));
+        }
+        requests.clear();
+    }
+    
+    // Stops the dispatchers once they finish their current batches, and fails the positions still waiting.
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+        
+        List<Request> abandoned = new ArrayList<>();
+        pending.drainTo(abandoned);
+        failAll(abandoned);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+            "EvaluationBroker{ maximumBatchSize=%d, maximumWaitNanos=%d, batches=%d, positions=%d }",
+            maximumBatchSize,
+            maximumWaitNanos,
+            getBatches(),
+            getPositions()
+        );
+    }
+}
@@ -0,0 +1,148 @@
+package com.sadakatsu.goai;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// EvaluationCache remembers the Scores of recently evaluated positions so that a GoAi can skip running its network
+// when a position recurs, as positions constantly do in long self-play games and in App's dead stone searches.
+//
+// Only a recurrence in exactly the same form is a hit.  The convolutions would give a rotated, reflected or colour
+// inverted form of the position the same board scores, translated, but the fully connected Neurons behind the two
+// PASS outputs are not symmetric, so a symmetric form's PASS Scores can only come from running the network.  The
+// cache is keyed by ZobristHash, whose equality ignores the symmetries, so each position holds one entry for all of
+// its forms: looking up another form counts as a miss, and storing that form's Scores replaces the entry.
+//
+// The least recently used positions are evicted once the estimated size of the stored entries exceeds the budget.
+// The estimate counts the Score objects and the ZobristHash of each entry; it is meant for sizing the cache, not as
+// an exact account of the heap.
+public final class EvaluationCache {
+    private static final class Entry {
+        final ZobristHash hash;
+        final Score[] scores;
+        final long size;
+        
+        Entry( ZobristHash hash, Score[] scores ) {
+            this.hash = hash;
+            this.scores = scores;
+            this.size = ENTRY_OVERHEAD + scores.length * SCORE_SIZE + estimateSize(hash);
+        }
+    }
+    
+    // These approximate a 64-bit JVM with compressed references.
+    private static final long ENTRY_OVERHEAD = 96;
+    private static final long SCORE_SIZE = 56;
+    private static final long ZOBRIST_HASH_OVERHEAD = 352;
+    
+    // A ZobristHash holds its sixteen 128-bit keys and a byte for each cell.
+    private static long estimateSize( ZobristHash hash ) {
+        int dimension = hash.getDimension();
+        return ZOBRIST_HASH_OVERHEAD + dimension * dimension;
+    }
+    
+    private final long budget;
+    private final LinkedHashMap<ZobristHash, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    // Guarded by entries.
+    private long used;
+    
+    public EvaluationCache( long budget ) {
+        if (budget < 1) {
+            String message = String.format("The budget must be at least 1 byte, but it was %d.", budget);
+            throw new IllegalArgumentException(message);
+        }
+        this.budget = budget;
+    }
+    
+    // Returns the Scores of the hash's position, or null if it is not cached in exactly that form.
+    List<Score> lookup( ZobristHash hash ) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(hash);
+        }
+        
+        if (entry == null || !entry.hash.exactlyEquals(hash)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        
+        hits.incrementAndGet();
+        return Collections.unmodifiableList(Arrays.asList(entry.scores));
+    }
+    
+    void store( ZobristHash hash, List<Score> scores ) {
+        Entry entry = new Entry(hash, scores.toArray(new Score[scores.size()]));
+        
+        synchronized (entries) {
+            Entry replaced = entries.put(hash, entry);
+            if (replaced != null) {
+                used -= replaced.size;
+            }
+            used += entry.size;
+            
+            // The newest entry is always kept, even if it alone exceeds the budget.
+            Iterator<Map.Entry<ZobristHash, Entry>> iterator = entries.entrySet().iterator();
+            while (used > budget && entries.size() > 1) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                used -= eldest.size;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            used = 0;
+        }
+    }
+    
+    public long getBudget() {
+        return budget;
+    }
+    
+    public long getUsed() {
+        synchronized (entries) {
+            return used;
+        }
+    }
+    
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+            "EvaluationCache{ size=%d, used=%d, budget=%d, hits=%d, misses=%d, evictions=%d }",
+            getSize(),
+            getUsed(),
+            budget,
+            getHits(),
+            getMisses(),
+            getEvictions()
+        );
+    }
+}
@@ -3,7 +3,6 @@ package com.sadakatsu.goai;
 import static com.sadakatsu.go.domain.Pass.PASS;
 import static com.sadakatsu.goai.ScoreRecommender.Relationship.*;
 
-import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -76,8 +75,14 @@ public class FuzzyBestLocalInvariantRecommender extends ScoreRecommender {
         ZobristHash getHashAfter( Move move ) {
             ZobristHash hash = hashes.get(move);
             if (hash == null) {
-                Game next = game.play(move);
-                hash = new ZobristHash(next);
+                ZobristHash parent = getEvaluation().getHash();
+                parent.canonicalize();
+                
+                // The child Game is only played out when the hash cannot be derived from the parent's cells alone.
+                hash = parent.tryAdvance(move);
+                if (hash == null) {
+                    hash = parent.advance(game.play(move));
+                }
                 hashes.put(move, hash);
             }
             return hash;
@@ -90,33 +95,36 @@ public class FuzzyBestLocalInvariantRecommender extends ScoreRecommender {
     }
 
     @Override
-    protected Relationship compareScores( Score first, Score second, RecommenderComparisonState state ) {
+    protected Relationship compareScores(
+        ScoreTable table,
+        int first,
+        int second,
+        RecommenderComparisonState state
+    ) {
         Relationship relationship;
         
         int comparison = 0;
-        Move firstMove = first.getMove();
-        Move secondMove = second.getMove();
         
         // Prefer first the move that gets the best difference in scores, then the move that gets the current player
         // the most points, unless the differences in the moves' scores is caused by rounding. 
-        if (!first.isOutcomeSimilarTo(second)) {
-            comparison = Double.compare(first.getReadableResult(), second.getReadableResult());
+        if (!table.isOutcomeSimilar(first, second)) {
+            comparison = Double.compare(table.getReadableResult(first), table.getReadableResult(second));
             if (comparison == 0) {
-                comparison = Double.compare(first.getReadablePlayerScore(), second.getReadablePlayerScore());
+                comparison = Double.compare(table.getReadablePlayerScore(first), table.getReadablePlayerScore(second));
             }
         }
         
         // Prefer a pass to a play since that is considered more elegant.
         if (comparison == 0) {
-            comparison = (firstMove == PASS ? 1 : 0) + (secondMove == PASS ? -1 : 0);
+            comparison = (table.isPass(first) ? 1 : 0) + (table.isPass(second) ? -1 : 0);
         }
         
         // Prefer a move that is closer to the last move played than one that is further away.  We want the AI to learn
         // how to fight (and when not to!).
         if (comparison == 0) {
             DistanceAndPositionState actualState = (DistanceAndPositionState) state;
-            int firstDistance = actualState.getDistanceFromLastMove(firstMove);
-            int secondDistance = actualState.getDistanceFromLastMove(secondMove);
+            int firstDistance = actualState.getDistanceFromLastMove(table.getMove(first));
+            int secondDistance = actualState.getDistanceFromLastMove(table.getMove(second));
             comparison = Integer.compare(secondDistance, firstDistance);
         }
         
@@ -148,10 +156,7 @@ public class FuzzyBestLocalInvariantRecommender extends ScoreRecommender {
         ZobristHash firstHash = actualState.getHashAfter(firstMove);
         ZobristHash secondHash = actualState.getHashAfter(secondMove);
         
-        BigInteger firstCanonical = firstHash.getCanonicalHash();
-        BigInteger secondCanonical = secondHash.getCanonicalHash();
-        
-        int comparison = firstCanonical.compareTo(secondCanonical);
+        int comparison = firstHash.compareCanonicalTo(secondHash);
         return comparison > 0;
     }
 
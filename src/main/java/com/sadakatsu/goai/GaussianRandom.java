@@ -0,0 +1,37 @@
+package com.sadakatsu.goai;
+
+import java.util.SplittableRandom;
+
+// GaussianRandom draws normally distributed values from a SplittableRandom, which has no nextGaussian() before Java 17.
+// It uses the same polar method as java.util.Random: each accepted point yields two independent values, and the
+// second is kept for the next call.  Like its SplittableRandom, a GaussianRandom must only be used by one thread.
+final class GaussianRandom {
+    private final SplittableRandom random;
+    private double spare;
+    private boolean hasSpare;
+    
+    GaussianRandom( SplittableRandom random ) {
+        this.random = random;
+    }
+    
+    double nextGaussian() {
+        if (hasSpare) {
+            hasSpare = false;
+            return spare;
+        }
+        
+        double x;
+        double y;
+        double radius;
+        do {
+            x = 2 * random.nextDouble() - 1;
+            y = 2 * random.nextDouble() - 1;
+            radius = x * x + y * y;
+        } while (radius >= 1 || radius == 0);
+        
+        double multiplier = Math.sqrt(-2 * Math.log(radius) / radius);
+        spare = y * multiplier;
+        hasSpare = true;
+        return x * multiplier;
+    }
+}
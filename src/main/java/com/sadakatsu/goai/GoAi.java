@@ -2,13 +2,20 @@ package com.sadakatsu.goai;
 
 import static com.sadakatsu.go.domain.Pass.PASS;
 import static com.sadakatsu.goai.GoAi.InputChannels.*;
-import static com.sadakatsu.util.Time.time;
 
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.RecursiveAction;
+import java.util.SplittableRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,172 +26,437 @@ import com.sadakatsu.go.domain.Group;
 import com.sadakatsu.go.domain.Move;
 import com.sadakatsu.go.domain.intersection.Intersection;
 import com.sadakatsu.go.domain.intersection.Player;
+import com.sadakatsu.util.Timer;
+import com.sadakatsu.util.Timers;
 
-public final class GoAi {
+public final class GoAi implements AutoCloseable {
+    public static final class GoAiBuilder {
+        private final int boardSize;
+        private final int hiddenLayers;
+        private final int channels;
+        private long seed;
+        private ConvolutionBackend backend;
+        private Precision precision;
+        private int parallelism;
+        private long cacheBudget;
+        private Checkpoint checkpoint;
+        
+        private GoAiBuilder( int boardSize, int hiddenLayers, int channels ) {
+            this.boardSize = boardSize;
+            this.hiddenLayers = hiddenLayers;
+            this.channels = channels;
+            this.seed = System.nanoTime();
+            this.backend = ConvolutionBackend.PER_NEURON;
+            this.precision = Precision.DOUBLE;
+            this.parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        
+        // A GoAi built from a checkpoint keeps the seed recorded in the checkpoint.
+        public GoAiBuilder seed( long seed ) {
+            if (checkpoint != null) {
+                String message = String.format(
+                    "The seed of a GoAi loaded from %s is the checkpoint's, %d.",
+                    checkpoint.getPath(),
+                    checkpoint.getSeed()
+                );
+                throw new IllegalStateException(message);
+            }
+            this.seed = seed;
+            return this;
+        }
+        
+        public GoAiBuilder backend( ConvolutionBackend backend ) {
+            if (backend == null) {
+                throw new IllegalArgumentException("The ConvolutionBackend may not be null.");
+            }
+            this.backend = backend;
+            return this;
+        }
+        
+        // SINGLE precision is only implemented by the IM2COL backend, since it relies upon converting the weights into a
+        // separate layout anyway.
+        public GoAiBuilder precision( Precision precision ) {
+            if (precision == null) {
+                throw new IllegalArgumentException("The Precision may not be null.");
+            }
+            this.precision = precision;
+            return this;
+        }
+        
+        // The parallelism is the number of threads, including the caller's, that compute a layer when an evaluation is
+        // parallelized.
+        public GoAiBuilder parallelism( int parallelism ) {
+            if (parallelism < 1) {
+                String message = String.format("The parallelism must be at least 1, but it was %d.", parallelism);
+                throw new IllegalArgumentException(message);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+        
+        // A positive budget gives the GoAi an EvaluationCache of about that many bytes.  The cache is disabled by
+        // default.
+        public GoAiBuilder cacheBudget( long cacheBudget ) {
+            if (cacheBudget < 0) {
+                String message = String.format("The cache budget may not be negative, but it was %d.", cacheBudget);
+                throw new IllegalArgumentException(message);
+            }
+            this.cacheBudget = cacheBudget;
+            return this;
+        }
+        
+        // Returns a builder with the same configuration, including the checkpoint, so that several differently
+        // configured GoAis can be built without changing this one.
+        GoAiBuilder copy() {
+            GoAiBuilder copy = new GoAiBuilder(boardSize, hiddenLayers, channels);
+            copy.seed = seed;
+            copy.backend = backend;
+            copy.precision = precision;
+            copy.parallelism = parallelism;
+            copy.cacheBudget = cacheBudget;
+            copy.checkpoint = checkpoint;
+            return copy;
+        }
+        
+        public GoAi build() {
+            if (precision == Precision.SINGLE && backend != ConvolutionBackend.IM2COL) {
+                String message = String.format(
+                    "Precision %s requires the %s backend, but the backend was %s.",
+                    precision,
+                    ConvolutionBackend.IM2COL,
+                    backend
+                );
+                throw new IllegalArgumentException(message);
+            }
+            return new GoAi(this);
+        }
+    }
+    
+    // An Evaluation is also the workspace that its GoAi ran the network in.  GoAi pools these workspaces: calling
+    // release() once an Evaluation is no longer needed lets a later evaluation reuse its Tensors instead of allocating
+    // new ones.  A released Evaluation may be handed out again at any time, so it must not be used after release().
+    // An Evaluation that is never released is simply garbage collected.
     public final class Evaluation {
-        private double[][][]   expected;
-        private double[][][]   input;
-        private double[][][][] activations;
-        private double[][][][] errors;
-        private Game           game;
-        private int[][][][]    orientations;
-        private Set<Move>      legalMoves;
+        private Tensor    expected;
+        private Tensor[]  errors;
+        private Game      game;
+        private Set<Move> legalMoves;
+        private boolean   released;
+        private ZobristHash hash;
+        private boolean   hasTargets;
+        
+        private final Tensor   input;
+        private final Tensor[] activations;
+        private final int[][]  orientations;
+        private final ScoreTable scoreTable = new ScoreTable(boardSize);
+        private boolean scoreTableFilled;
+        
+        // This is only created once the Evaluation is first encoded incrementally.
+        private IncrementalEncoder incrementalEncoder;
+        
+        // Each ScoreRecommender keeps its comparison state for this Evaluation here, so asking it for several
+        // recommendations only compares the Scores once.  These are forgotten when the Evaluation is released.
+        private final Map<ScoreRecommender, RecommenderComparisonState> comparisonStates = new IdentityHashMap<>(4);
+        
+        // These let a single Evaluation run through the network as a batch of one without allocating the arrays.
+        private final Evaluation[] batch = { this };
+        private final Tensor[]     batchInputs = new Tensor[1];
+        private final Tensor[]     batchActivations = new Tensor[1];
+        private final int[][]      batchOrientations = new int[1][];
         
         // TODO: I want to include on-board and off-board channels for every activation layer except the last one.
-        private Evaluation( Game game, double[][][] input ) {
+        private Evaluation() {
+            int padding = getInputPadding();
+            input = new Tensor(InputChannels.count, boardSize + padding * 2);
+            activations = buildTensors(true);
+            orientations = buildOrientations();
+            released = true;
+        }
+        
+        // The engines only ever write the cells inside each activation's padding, so the padding stays zero and the
+        // rest is overwritten by every evaluation.  Only the input needs to be cleared.
+        private void prepare( Game game, Evaluation previous ) throws Exception {
             this.game = game;
-            this.input = input;
+            this.legalMoves = game.getLegalMoves();
+            this.released = false;
+            this.scoreTableFilled = false;
             
-            activations = buildDoubleStructure(true);
-            orientations = buildIntStructure();
-            legalMoves = game.getLegalMoves();
+            boolean measure = metrics.isEnabled();
+            long start = measure ? System.nanoTime() : 0;
+            if (previous == null) {
+                encode(game, legalMoves, input);
+            } else {
+                if (incrementalEncoder == null) {
+                    incrementalEncoder = new IncrementalEncoder(boardSize, getInputPadding());
+                }
+                encodeIncrementally(game, legalMoves, previous.input, incrementalEncoder, input);
+            }
+            if (measure) {
+                metrics.recordEncoding(System.nanoTime() - start);
+            }
+        }
+        
+        private GoAi getOwner() {
+            return GoAi.this;
+        }
+        
+        RecommenderComparisonState getComparisonState( ScoreRecommender recommender ) {
+            validateNotReleased();
+            return comparisonStates.get(recommender);
         }
         
-        private double[][][][] buildDoubleStructure( boolean shouldPad ) {
-            double[][][][] structure = new double[layers][][][];
+        void setComparisonState( ScoreRecommender recommender, RecommenderComparisonState state ) {
+            validateNotReleased();
+            comparisonStates.put(recommender, state);
+        }
+        
+        // The hash is already built when the GoAi has an EvaluationCache; otherwise it is built on first use.
+        ZobristHash getHash() {
+            validateNotReleased();
+            if (hash == null) {
+                hash = new ZobristHash(game);
+            }
+            return hash;
+        }
+        
+        Tensor getInput() {
+            validateNotReleased();
+            return input;
+        }
+        
+        Tensor getActivation( int layer ) {
+            validateNotReleased();
+            return activations[layer];
+        }
+        
+        // The orientation of the weights that each Neuron of the layer chose for each cell, indexed as the layer's
+        // activations are without their padding.
+        int[] getOrientations( int layer ) {
+            validateNotReleased();
+            return orientations[layer];
+        }
+        
+        public void release() {
+            validateNotReleased();
+            
+            released = true;
+            game = null;
+            legalMoves = null;
+            hash = null;
+            comparisonStates.clear();
+            hasTargets = false;
+            reclaim(this);
+        }
+        
+        private void validateNotReleased() {
+            if (released) {
+                throw new IllegalStateException("This Evaluation has been released and may no longer be used.");
+            }
+        }
+        
+        private Tensor[] buildTensors( boolean shouldPad ) {
+            Tensor[] structure = new Tensor[layers];
             for (int layer = 0; layer < layers; ++layer) {
                 if (layer < layers - 1) {
                     // The last hidden layer before the output layer should not pad its output.  The idea is to borrow
                     // DeepMind's idea of "convolving" only a single cell's penultimate features to generate its
                     // composite feature for the play values, or to use fully-connected neurons for the pass values.
                     int padding = shouldPad && layer < layers - 2 ? 1 : 0;
-                    structure[layer] = getHiddenLayerDoubleArray(padding);
+                    structure[layer] = getHiddenLayerTensor(padding);
                 } else {
-                    structure[layer] = getOutputLayerDoubleArray();
+                    structure[layer] = getOutputLayerTensor();
                 }
             }
             return structure;
         }
         
-        private double[][][] getHiddenLayerDoubleArray( int padding ) {
+        private Tensor getHiddenLayerTensor( int padding ) {
             int breadth = boardSize + padding * 2;
-            return new double[channels][breadth][breadth];
+            return new Tensor(channels, breadth);
         }
         
-        private double[][][] getOutputLayerDoubleArray() {
-            return new double[][][] {
-                new double[boardSize][boardSize],
-                new double[boardSize][boardSize],
-                new double[1][1],
-                new double[1][1]
-            };
+        // The output layer holds the player's and opponent's play values in the first two channels.  The pass values
+        // only use the first cell of the last two channels.
+        private Tensor getOutputLayerTensor() {
+            return new Tensor(4, boardSize);
         }
         
-        private int[][][][] buildIntStructure() {
-            int[][][][] structure = new int[layers][][][];
+        private int[][] buildOrientations() {
+            int[][] structure = new int[layers][];
             for (int layer = 0; layer < layers; ++layer) {
-                if (layer < layers - 1) {
-                    structure[layer] = getHiddenLayerIntArray();
-                } else {
-                    structure[layer] = getOutputLayerIntArray();
-                }
+                int count = layer < layers - 1 ? channels : 4;
+                structure[layer] = new int[count * boardSize * boardSize];
             }
             return structure;
         }
         
-        private int[][][] getHiddenLayerIntArray() {
-            return new int[channels][boardSize][boardSize];
+        // The expected Tensor holds NaN wherever there is no target, so those outputs contribute no error.  The errors
+        // have the activations' shapes, padding included, so that a layer's errors are accumulated at the same
+        // indices its inputs are read from.  Both are kept for the workspace's next training example.
+        private void prepareForBackpropagation( List<Score> targets ) {
+            Tensor output = activations[layers - 1];
+            if (expected == null) {
+                expected = new Tensor(output.channels, output.breadth);
+                errors = buildTensors(true);
+            }
+            
+            Arrays.fill(expected.values, Double.NaN);
+            for (Score target : targets) {
+                Move move = target.getMove();
+                if (!legalMoves.contains(move)) {
+                    String message = String.format("The target %s is not a legal move in\n%s", move, game);
+                    throw new IllegalArgumentException(message);
+                }
+                
+                int playerIndex = getOutputIndex(move, 0, expected);
+                expected.values[playerIndex] = target.getRawPlayerScore();
+                expected.values[playerIndex + expected.channelStride] = target.getRawOpponentScore();
+            }
+            hasTargets = true;
+        }
+        
+        public Game getGame() {
+            validateNotReleased();
+            return game;
         }
         
-        private int[][][] getOutputLayerIntArray() {
-            return new int[][][] {
-                new int[boardSize][boardSize],
-                new int[boardSize][boardSize],
-                new int[1][1],
-                new int[1][1]
-            };
+        // The table is read out of the output layer the first time it is needed, and then reused until the
+        // Evaluation is released.
+        public ScoreTable getScoreTable() {
+            validateNotReleased();
+            if (!scoreTableFilled) {
+                scoreTable.fill(legalMoves, activations[layers - 1]);
+                scoreTableFilled = true;
+            }
+            return scoreTable;
         }
         
-        private void prepareForBackpropagation( double[][][] expected ) {
-            this.expected = expected;
-            errors = buildDoubleStructure(false);
+        // Makes the ScoreRecommenders compare this Evaluation's Scores again, as they would for a new Evaluation.
+        void clearComparisonStates() {
+            validateNotReleased();
+            comparisonStates.clear();
         }
         
-        public Game getGame() {
-            return game;
+        // Makes the next getScoreTable() read the output layer again.
+        void invalidateScoreTable() {
+            validateNotReleased();
+            scoreTableFilled = false;
         }
         
         public List<Score> getScores() {
-            List<Score> scores = new ArrayList<>();
+            boolean measure = metrics.isEnabled();
+            long start = measure ? System.nanoTime() : 0;
+            ScoreTable table = getScoreTable();
             
-            double[][][] output = activations[layers - 1]; 
-            for (Move move : legalMoves) {
-                Score score = getScoreFor(move, output);
-                scores.add(score);
+            int count = table.getLegalCount();
+            List<Score> scores = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                scores.add(table.getScore(table.getLegalSlot(i)));
             }
             
+            if (measure) {
+                metrics.recordScores(System.nanoTime() - start);
+            }
             return scores;
         }
         
-        private Score getScoreFor( Move move, double[][][] output ) {
-            double[][] playerChannel = null;
-            double[][] opponentChannel = null;
-            int column = 0;
-            int row = 0;
-            
+        // The opponent's score for a move is always one channel after the player's.
+        private int getOutputIndex( Move move, int channel, Tensor output ) {
+            final int index;
             if (move != PASS) {
-                playerChannel = output[0];
-                opponentChannel = output[1];
-                
                 Coordinate coordinate = (Coordinate) move;
-                column = coordinate.getColumn() - 1;
-                row = coordinate.getRow() - 1;
+                index = output.index(channel, coordinate.getRow() - 1, coordinate.getColumn() - 1);
             } else {
-                playerChannel = output[2];
-                opponentChannel = output[3];
+                index = output.index(channel + 2, 0, 0);
             }
-            
-            double rawPlayerScore = playerChannel[row][column];
-            double rawOpponentScore = opponentChannel[row][column];
-            return Score.createFromRawScores(move, rawPlayerScore, rawOpponentScore);
+            return index;
+        }
+        
+        // Writes Scores taken from an EvaluationCache into the output layer as if the network had calculated them.
+        private void restoreScores( List<Score> scores ) {
+            Tensor output = activations[layers - 1];
+            for (Score score : scores) {
+                int playerIndex = getOutputIndex(score.getMove(), 0, output);
+                output.values[playerIndex] = score.getRawPlayerScore();
+                output.values[playerIndex + output.channelStride] = score.getRawOpponentScore();
+            }
+            scoreTableFilled = false;
         }
         
         public Score getScoreFor( Move move ) {
+            validateNotReleased();
             if (!legalMoves.contains(move)) {
                 String message = String.format("%s is not a legal move for the evaluated Game:\n%s", move, game);
                 throw new IllegalArgumentException(message);
             }
             
-            return getScoreFor(move, activations[layers - 1]);
+            ScoreTable table = getScoreTable();
+            return table.getScore(table.getSlot(move));
         }
     }
     
-    private abstract class Neuron {
+    abstract class Neuron {
         double bias;
-        double[][][] weights;
+        double[] weights;
+        final int area;
         final int channels;
+        final int outputPadding;
         final int width;
         
-        Neuron( int channels, int width ) {
-            final double scale = 1. / Math.sqrt(channels * width * width);
-            
+        // A Neuron takes its bias and weights from the source when there is one, and draws them from random otherwise.
+        Neuron( int channels, int width, int outputPadding, DoubleBuffer source, GaussianRandom random ) {
+            this.area = width * width;
             this.channels = channels;
+            this.outputPadding = outputPadding;
             this.width = width;
-            this.weights = new double[channels][width][width];
-            this.bias = random.nextGaussian() * scale;
+            this.weights = new double[channels * area];
             
-            for (int channel = 0; channel < channels; ++channel) {
-                double[][] channelWeights = weights[channel];
-                for (int row = 0; row < width; ++row) {
-                    double[] rowWeights = channelWeights[row];
-                    for (int column = 0; column < width; ++column) {
-                        rowWeights[column] = random.nextGaussian() * scale;
-                    }
+            if (source != null) {
+                this.bias = source.get();
+                source.get(weights);
+            } else {
+                final double scale = 1. / Math.sqrt(channels * width * width);
+                this.bias = random.nextGaussian() * scale;
+                
+                // The weights are stored channel by channel, then row by row, so this draws them in the same order as
+                // the nested channel, row and column loops always have.
+                for (int i = 0; i < weights.length; ++i) {
+                    weights[i] = random.nextGaussian() * scale;
                 }
             }
         }
         
         abstract void calculate(
-            double[][][] input,
+            Tensor input,
             int startRow,
             int startColumn,
-            double[][] activation,
-            int[][] orientation
+            Tensor activation,
+            int channel,
+            int[] orientation
         );
         
-        // TODO: I probably need to add methods that help determine a Neuron's weights contributions to an error and to
-        // update the bias and weights from the calculated errors.  I don't have ideas for them right now, so I will
-        // come back to them later.
+        abstract int getOrientationCount();
+        
+        // Returns the offset within a channel's weights of the weight that the passed orientation applies to the
+        // kernel's row and column.
+        abstract int getWeightIndex( int orientation, int row, int column );
+        
+        // Adds the gradients of the weights for the output cell at startRow and startColumn to weightGradients, given
+        // the cell's error: the derivative of the loss with respect to its activation.  The error is also passed back
+        // to inputErrors, which has the input's shape, unless it is null.  The caller accumulates the bias's gradient.
+        abstract void backpropagate(
+            Tensor input,
+            int startRow,
+            int startColumn,
+            double error,
+            Tensor inputErrors,
+            int channel,
+            int[] orientation,
+            double[] weightGradients
+        );
+        
+        // Neurons without orientations have nothing to refresh after their weights change.
+        void refreshOrientedWeights() {}
     }
     
     // Depending upon its configuration and use, SimpleNeuron can either be a fully connected neuron or a convolution.
@@ -193,128 +465,210 @@ public final class GoAi {
     // than the channel's width, then convolving it over the input.  This allows the same code to support both
     // operations.
     private class SimpleNeuron extends Neuron {
-        SimpleNeuron( int channels, int width ) {
-            super(channels, width);
+        SimpleNeuron( int channels, int width, DoubleBuffer source, GaussianRandom random ) {
+            super(channels, width, 0, source, random);
         }
-
+        
+        @Override
+        int getOrientationCount() {
+            return 1;
+        }
+        
+        @Override
+        int getWeightIndex( int orientation, int row, int column ) {
+            return row * width + column;
+        }
+        
         @Override
         void calculate(
-            double[][][] input,
+            Tensor input,
             int startRow,
             int startColumn,
-            double[][] activation,
-            int[][] orientation
+            Tensor activation,
+            int channel,
+            int[] orientation
         ) {
+            final double[] inputValues = input.values;
+            final int inputBreadth = input.breadth;
             double result = bias;
             
-            for (int channel = 0; channel < channels; ++channel) {
-                double[][] inputChannel = input[channel];
-                double[][] weightChannel = weights[channel];
+            for (
+                int inputChannel = 0, weightChannel = 0;
+                inputChannel < channels;
+                ++inputChannel, weightChannel += area
+            ) {
+                int inputRow = input.index(inputChannel, startRow, startColumn);
                 
-                for (int rowIndex = 0, row = startRow; rowIndex < width; ++rowIndex, ++row) {
-                    double[] inputRow = inputChannel[row];
-                    double[] weightRow = weightChannel[rowIndex];
+                for (int rowIndex = 0; rowIndex < width; ++rowIndex, inputRow += inputBreadth) {
+                    int weightRow = weightChannel + rowIndex * width;
                     
-                    for (int columnIndex = 0, column = startColumn; columnIndex < width; ++columnIndex, ++column) {
-                        result += inputRow[column] * weightRow[columnIndex];
+                    for (int columnIndex = 0; columnIndex < width; ++columnIndex) {
+                        result += inputValues[inputRow + columnIndex] * weights[weightRow + columnIndex];
                     }
                 }
             }
             
-            activation[startRow][startColumn] = result;
-        }
-    }
-    
-    private class RotationInvariantNeuron extends Neuron {
-        final int outputPadding;
-        
-        RotationInvariantNeuron( int channels, int width, int outputPadding ) {
-            super(channels, width);
-            this.outputPadding = outputPadding;
+            activation.set(channel, startRow, startColumn, result);
         }
         
         @Override
-        void calculate(
-            double[][][] input,
+        void backpropagate(
+            Tensor input,
             int startRow,
             int startColumn,
-            double[][] activation,
-            int[][] orientation
+            double error,
+            Tensor inputErrors,
+            int channel,
+            int[] orientation,
+            double[] weightGradients
         ) {
-            double[] results = new double[] { bias, bias, bias, bias, bias, bias, bias, bias };
+            final double[] inputValues = input.values;
+            final int inputBreadth = input.breadth;
             
-            for (int channel = 0; channel < channels; ++channel) {
-                double[][] inputChannel = input[channel];
-                double[][] weightChannel = weights[channel];
+            for (
+                int inputChannel = 0, weightChannel = 0;
+                inputChannel < channels;
+                ++inputChannel, weightChannel += area
+            ) {
+                int inputRow = input.index(inputChannel, startRow, startColumn);
                 
-                for (
-                    int rowIndex = 0, oppositeRowIndex = width - 1, row = startRow;
-                    rowIndex < width;
-                    ++rowIndex, --oppositeRowIndex, ++row
-                ) {
-                    double[] inputRow = inputChannel[row];
-                    double[] weightsByRow = weightChannel[rowIndex];
-                    double[] weightsByRowOpposite = weightChannel[oppositeRowIndex];
+                for (int rowIndex = 0; rowIndex < width; ++rowIndex, inputRow += inputBreadth) {
+                    int weightRow = weightChannel + rowIndex * width;
                     
-                    for (
-                        int columnIndex = 0, oppositeColumnIndex = width - 1, column = startColumn;
-                        columnIndex < width;
-                        ++columnIndex, --oppositeColumnIndex, ++column
-                    ) {
-                        double inputValue = inputRow[column];
-                        double[] weightsByColumn = weightChannel[columnIndex];
-                        double[] weightsByColumnOpposite = weightChannel[oppositeColumnIndex];
-                        
-                        results[0] += inputValue * weightsByRow[columnIndex];
-                        results[1] += inputValue * weightsByRow[oppositeColumnIndex];
-                        results[2] += inputValue * weightsByRowOpposite[columnIndex];
-                        results[3] += inputValue * weightsByRowOpposite[oppositeColumnIndex];
-                        results[4] += inputValue * weightsByColumn[rowIndex];
-                        results[5] += inputValue * weightsByColumn[oppositeRowIndex];
-                        results[6] += inputValue * weightsByColumnOpposite[rowIndex];
-                        results[7] += inputValue * weightsByColumnOpposite[oppositeRowIndex];
+                    for (int columnIndex = 0; columnIndex < width; ++columnIndex) {
+                        weightGradients[weightRow + columnIndex] += error * inputValues[inputRow + columnIndex];
+                        if (inputErrors != null) {
+                            inputErrors.values[inputRow + columnIndex] += error * weights[weightRow + columnIndex];
+                        }
                     }
                 }
             }
+        }
+    }
+    
+    private class RotationInvariantNeuron extends Neuron {
+        // The bank interleaves the eight orientations of the weights: the eight consecutive values starting at
+        // kernelIndex * 8 are the weights that each orientation applies to the kernel's kernelIndex-th input value,
+        // where the kernel is walked channel by channel, then row by row.  The sources record which of the weights
+        // fills each slot of the bank so that the bank can be refreshed cheaply after the weights change.
+        final double[] orientedWeights;
+        final int[] orientedWeightSources;
+        
+        RotationInvariantNeuron(
+            int channels,
+            int width,
+            int outputPadding,
+            DoubleBuffer source,
+            GaussianRandom random
+        ) {
+            super(channels, width, outputPadding, source, random);
+            
+            orientedWeights = new double[weights.length * 8];
+            orientedWeightSources = new int[weights.length * 8];
             
-            double result = results[0];
-            int selected = 0;
-            for (int i = 1; i < 8; ++i) {
-                double current = results[i];
-                if (current > result) {
-                    result = current;
-                    selected = i;
+            int slot = 0;
+            for (int channel = 0, channelStart = 0; channel < channels; ++channel, channelStart += area) {
+                for (int row = 0; row < width; ++row) {
+                    for (int column = 0; column < width; ++column) {
+                        for (int orientation = 0; orientation < 8; ++orientation, ++slot) {
+                            orientedWeightSources[slot] = channelStart + getWeightIndex(orientation, row, column);
+                        }
+                    }
                 }
             }
             
-            activation[startRow + outputPadding][startColumn + outputPadding] = result;
-            orientation[startRow][startColumn] = selected;
+            refreshOrientedWeights();
         }
-    }
-    
-    private class NeuronRunner extends RecursiveAction {
-        private static final long serialVersionUID = 4511259319400548673L;
         
-        Evaluation workspace;
-        int channel;
-        int layer;
-        Neuron convolution;
+        // This must be called whenever the weights change.
+        @Override
+        void refreshOrientedWeights() {
+            for (int slot = 0; slot < orientedWeights.length; ++slot) {
+                orientedWeights[slot] = weights[orientedWeightSources[slot]];
+            }
+        }
         
-        public NeuronRunner(
-            Neuron convolution,
-            int layer,
+        @Override
+        int getOrientationCount() {
+            return 8;
+        }
+        
+        @Override
+        int getWeightIndex( int orientation, int row, int column ) {
+            int opposite = width - 1;
+            switch (orientation) {
+                case 0: return row * width + column;
+                case 1: return row * width + opposite - column;
+                case 2: return (opposite - row) * width + column;
+                case 3: return (opposite - row) * width + opposite - column;
+                case 4: return column * width + row;
+                case 5: return column * width + opposite - row;
+                case 6: return (opposite - column) * width + row;
+                case 7: return (opposite - column) * width + opposite - row;
+                default:
+                    String message = String.format(
+                        "The orientation must be between 0 and 7, but it was %d.",
+                        orientation
+                    );
+                    throw new IllegalArgumentException(message);
+            }
+        }
+        
+        @Override
+        void calculate(
+            Tensor input,
+            int startRow,
+            int startColumn,
+            Tensor activation,
             int channel,
-            Evaluation workspace
+            int[] orientation
         ) {
-            this.channel = channel;
-            this.convolution = convolution;
-            this.layer = layer;
-            this.workspace = workspace;
+            int selected = OrientationKernel.getInstance().calculate(
+                orientedWeights,
+                bias,
+                input.values,
+                input.index(0, startRow, startColumn),
+                input.breadth,
+                input.channelStride,
+                channels,
+                width,
+                activation.values,
+                activation.index(channel, startRow + outputPadding, startColumn + outputPadding)
+            );
+            orientation[(channel * boardSize + startRow) * boardSize + startColumn] = selected;
         }
         
+        // Only the orientation that won the forward pass contributed to the activation, so the error flows through its
+        // weights alone.  Its slots in the bank are every eighth one, starting from the orientation itself.
         @Override
-        protected void compute() {
-            runConvolution(convolution, layer, channel, workspace);
+        void backpropagate(
+            Tensor input,
+            int startRow,
+            int startColumn,
+            double error,
+            Tensor inputErrors,
+            int channel,
+            int[] orientation,
+            double[] weightGradients
+        ) {
+            final double[] inputValues = input.values;
+            int slot = orientation[(channel * boardSize + startRow) * boardSize + startColumn];
+            
+            for (
+                int inputChannel = 0, channelStart = input.index(0, startRow, startColumn);
+                inputChannel < channels;
+                ++inputChannel, channelStart += input.channelStride
+            ) {
+                for (int row = 0, inputRow = channelStart; row < width; ++row, inputRow += input.breadth) {
+                    for (int column = 0; column < width; ++column, slot += 8) {
+                        int inputIndex = inputRow + column;
+                        weightGradients[orientedWeightSources[slot]] += error * inputValues[inputIndex];
+                        if (inputErrors != null) {
+                            inputErrors.values[inputIndex] += error * orientedWeights[slot];
+                        }
+                    }
+                }
+            }
         }
     }
     
@@ -343,57 +697,82 @@ public final class GoAi {
         private static final int count = values().length;
     }
     
-    private static void runConvolution( Neuron convolution, int layer, int channel, Evaluation workspace ) {
-        double[][][] input = layer == 0 ? workspace.input : workspace.activations[layer - 1];
-        double[][] activation = workspace.activations[layer][channel];
-        int[][] orientation = workspace.orientations[layer][channel];
-        
-        int last = input[0].length - convolution.width;
-        for (int row = 0; row <= last; ++row) {
-            for (int column = 0; column <= last; ++column) {
-                convolution.calculate(input, row, column, activation, orientation);
-            }
-        }
-    }
-    
     private static final Logger LOGGER = LoggerFactory.getLogger(GoAi.class);
     private static final boolean LOG = true;
-    private static final boolean TIME = true;
+    
+    private static final Timer ACQUIRE_EVALUATION = Timers.register("GoAi.acquireEvaluation(Game)");
+    private static final Timer RESTORE_FROM_CACHE = Timers.register("GoAi.restoreFromCache(Evaluation)");
+    private static final Timer PARALLELIZED_NETWORK = Timers.register("neural network with parallelized layers");
+    private static final Timer SYNCHRONOUS_NETWORK = Timers.register("neural network with synchronous layers");
+    private static final Timer PREPARE_BATCH = Timers.register("GoAi.prepareBatch(List<Game>)");
+    private static final Timer RESTORE_BATCH_FROM_CACHE = Timers.register("GoAi.restoreBatchFromCache()");
+    private static final Timer BATCH_NETWORK = Timers.register("neural network for uncached Games");
+    
+    // The most released Evaluations a GoAi keeps for reuse.  Any released beyond this are left to the garbage collector.
+    private static final int POOL_CAPACITY = 64;
+    
+    // Setting the "goai.verifyIncrementalEncoding" system property to "true" makes every incremental encoding compare
+    // itself against a full encoding of the same Game.  This is for debugging; it costs more than it saves.
+    private static final boolean VERIFY_INCREMENTAL_ENCODING = Boolean.getBoolean("goai.verifyIncrementalEncoding");
+    
+    private static final int[] REFRESHED_CHANNELS = {
+        LEGAL_MOVE.ordinal(),
+        ILLEGAL_MOVE.ordinal(),
+        OPPONENT_COULD_PLAY_AFTER_PASS.ordinal(),
+        OPPONENT_COULD_NOT_PLAY_AFTER_PASS.ordinal()
+    };
     
     private final int boardSize;
     private final int layers;
     private final int channels;
     private final long seed;
     private final Neuron[][] network;
-    private final Random random;
+    private final ConvolutionBackend backend;
+    private final Precision precision;
+    private final ConvolutionEngine engine;
+    private final TileScheduler scheduler;
+    private final ArrayDeque<Evaluation> pool = new ArrayDeque<>();
+    private final ArrayDeque<ConvolutionScratch> scratches = new ArrayDeque<>();
+    private final EvaluationCache cache;
+    private final GoAiMetrics metrics;
     
     public GoAi( int boardSize, int hiddenLayers, int channels ) {
         this(boardSize, hiddenLayers, channels, System.nanoTime());
     }
     
     public GoAi( int boardSize, int hiddenLayers, int channels, long seed ) {
-        validateBoardSize(boardSize);
-        validateHiddenLayers(hiddenLayers);
-        validateChannels(channels);
-        
+        this(newBuilder(boardSize, hiddenLayers, channels).seed(seed));
+    }
+    
+    private GoAi( GoAiBuilder builder ) {
         if (LOG) {
             LOGGER.debug(
-                "Instantiating GoAi with boardSize {}, hiddenLayers {}, channels {}, and seed {}",
-                boardSize,
-                hiddenLayers,
-                channels,
-                seed
+                "Instantiating GoAi with boardSize {}, hiddenLayers {}, channels {}, seed {}, backend {}, " +
+                "precision {}, parallelism {}, and cacheBudget {}",
+                builder.boardSize,
+                builder.hiddenLayers,
+                builder.channels,
+                builder.seed,
+                builder.backend,
+                builder.precision,
+                builder.parallelism,
+                builder.cacheBudget
             );
         }
         
-        this.boardSize = boardSize;
-        this.channels = channels;
-        this.layers = hiddenLayers + 1;
-        this.seed = seed;
-        this.random = new Random(seed);
+        this.boardSize = builder.boardSize;
+        this.channels = builder.channels;
+        this.layers = builder.hiddenLayers + 1;
+        this.seed = builder.seed;
+        this.backend = builder.backend;
+        this.precision = builder.precision;
+        this.scheduler = new TileScheduler(builder.parallelism);
+        this.cache = builder.cacheBudget > 0 ? new EvaluationCache(builder.cacheBudget) : null;
         
         try {
-            network = buildNetwork();
+            network = buildNetwork(builder.checkpoint);
+            engine = buildEngine();
+            metrics = new GoAiMetrics(countMacs());
         } catch (OutOfMemoryError e) {
             throw new IllegalArgumentException(
                 "The arguments specify a GoAi that is to large to fit in the heap.  Either shrink this AI by lowering" +
@@ -403,7 +782,25 @@ public final class GoAi {
         }
     }
     
-    private void validateBoardSize( int boardSize ) {
+    public static GoAiBuilder newBuilder( int boardSize, int hiddenLayers, int channels ) {
+        validateBoardSize(boardSize);
+        validateHiddenLayers(hiddenLayers);
+        validateChannels(channels);
+        
+        return new GoAiBuilder(boardSize, hiddenLayers, channels);
+    }
+    
+    // Reopens a GoAi written by save().  The checkpoint decides the GoAi's dimensions, seed and weights; the backend,
+    // precision, parallelism and cache can still be chosen through the builder.
+    public static GoAiBuilder newBuilder( Path checkpoint ) throws IOException {
+        Checkpoint opened = Checkpoint.open(checkpoint);
+        GoAiBuilder builder = newBuilder(opened.getBoardSize(), opened.getHiddenLayers(), opened.getChannels());
+        builder.seed(opened.getSeed());
+        builder.checkpoint = opened;
+        return builder;
+    }
+    
+    private static void validateBoardSize( int boardSize ) {
         if (boardSize < 1 || boardSize > 19) {
             String message = String.format(
                 "The boardSize must be between 1 and 19 inclusive, but it was %d.",
@@ -413,7 +810,7 @@ public final class GoAi {
         }
     }
     
-    private void validateHiddenLayers( int hiddenLayers ) {
+    private static void validateHiddenLayers( int hiddenLayers ) {
         if (hiddenLayers < 0) {
             String message = String.format(
                 "The hiddenLayers must be at least 0, but it was %d.",
@@ -423,7 +820,7 @@ public final class GoAi {
         }
     }
     
-    private void validateChannels( int channels ) {
+    private static void validateChannels( int channels ) {
         if (channels < 1) {
             String message = String.format(
                 "The channels must be at least 0, but it was %d.",
@@ -433,35 +830,116 @@ public final class GoAi {
         }
     }
     
-    private Neuron[][] buildNetwork() {
+    private Neuron[][] buildNetwork( Checkpoint checkpoint ) {
         Neuron[][] network = new Neuron[layers][];
+        for (int layer = 0; layer < layers; ++layer) {
+            network[layer] = new Neuron[layer == layers - 1 ? 4 : channels];
+        }
+        
+        if (checkpoint == null) {
+            drawNetwork(network);
+        } else {
+            loadNetwork(network, checkpoint);
+        }
         
+        return network;
+    }
+    
+    // Every Neuron draws its weights from its own stream, split off the seed's stream in the order the Neurons are
+    // built.  The streams do not depend upon which thread uses them, so a seed produces the same network no matter the
+    // parallelism.
+    private void drawNetwork( Neuron[][] network ) {
+        int[] starts = new int[layers + 1];
         for (int layer = 0; layer < layers; ++layer) {
-            boolean isFirstLayer = layer == 0;
-            boolean isOutputLayer = layer == layers - 1;
-            boolean shouldPadOutput = layer < layers - 2;
-            
-            int inputChannels = isFirstLayer ? InputChannels.count : channels;
-            
-            if (isOutputLayer) {
-                network[layer] = new Neuron[] {
-                    new SimpleNeuron(inputChannels, 1),
-                    new SimpleNeuron(inputChannels, 1),
-                    new SimpleNeuron(inputChannels, boardSize),
-                    new SimpleNeuron(inputChannels, boardSize)
-                };
-            } else {
-                int kernelWidth = isFirstLayer ? 5 : 3;
-                int outputPadding = shouldPadOutput ? 1 : 0;
-                
-                network[layer] = new Neuron[channels];
-                for (int channel = 0; channel < channels; ++channel) {
-                    network[layer][channel] = new RotationInvariantNeuron(inputChannels, kernelWidth, outputPadding);
+            starts[layer + 1] = starts[layer] + network[layer].length;
+        }
+        
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[starts[layers]];
+        for (int i = 0; i < streams.length; ++i) {
+            streams[i] = root.split();
+        }
+        
+        scheduler.run(streams.length, (tile) -> {
+            int layer = 0;
+            while (starts[layer + 1] <= tile) {
+                ++layer;
+            }
+            int index = tile - starts[layer];
+            network[layer][index] = createNeuron(layer, index, null, new GaussianRandom(streams[tile]));
+        });
+    }
+    
+    // A checkpoint holds the Neurons' weights one after another, so they are read in order.
+    private void loadNetwork( Neuron[][] network, Checkpoint checkpoint ) {
+        DoubleBuffer source = checkpoint.getWeights();
+        try {
+            for (int layer = 0; layer < layers; ++layer) {
+                for (int index = 0; index < network[layer].length; ++index) {
+                    network[layer][index] = createNeuron(layer, index, source, null);
                 }
             }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException(describeMismatchedCheckpoint(checkpoint, "fewer"), e);
         }
         
-        return network;
+        if (source.hasRemaining()) {
+            throw new IllegalArgumentException(describeMismatchedCheckpoint(checkpoint, "more"));
+        }
+    }
+    
+    private String describeMismatchedCheckpoint( Checkpoint checkpoint, String comparison ) {
+        return String.format(
+            "%s holds %s weights than a GoAi with boardSize %d, hiddenLayers %d, and channels %d needs.",
+            checkpoint.getPath(),
+            comparison,
+            boardSize,
+            layers - 1,
+            channels
+        );
+    }
+    
+    // The output layer's first two Neurons are 1x1 convolutions, and its last two are fully connected.
+    private Neuron createNeuron( int layer, int index, DoubleBuffer source, GaussianRandom random ) {
+        boolean isFirstLayer = layer == 0;
+        boolean isOutputLayer = layer == layers - 1;
+        boolean shouldPadOutput = layer < layers - 2;
+        
+        int inputChannels = isFirstLayer ? InputChannels.count : channels;
+        
+        final Neuron neuron;
+        if (isOutputLayer) {
+            neuron = new SimpleNeuron(inputChannels, index < 2 ? 1 : boardSize, source, random);
+        } else {
+            int kernelWidth = isFirstLayer ? 5 : 3;
+            int outputPadding = shouldPadOutput ? 1 : 0;
+            neuron = new RotationInvariantNeuron(inputChannels, kernelWidth, outputPadding, source, random);
+        }
+        return neuron;
+    }
+    
+    // A RotationInvariantNeuron tries each of its orientations at every cell of the board.  The output layer's
+    // board-wide SimpleNeurons are fully connected, so they produce a single value each.
+    private long[] countMacs() {
+        long[] macs = new long[layers];
+        for (int layer = 0; layer < layers; ++layer) {
+            for (Neuron neuron : network[layer]) {
+                boolean isFullyConnected = neuron instanceof SimpleNeuron && neuron.width == boardSize;
+                long outputs = isFullyConnected ? 1 : boardSize * boardSize;
+                macs[layer] += neuron.weights.length * neuron.getOrientationCount() * outputs;
+            }
+        }
+        return macs;
+    }
+    
+    private ConvolutionEngine buildEngine() {
+        final ConvolutionEngine engine;
+        if (backend == ConvolutionBackend.IM2COL) {
+            engine = new Im2ColConvolutionEngine(network, scheduler, precision);
+        } else {
+            engine = new NeuronConvolutionEngine(network, scheduler);
+        }
+        return engine;
     }
     
     public int getBoardSize() {
@@ -480,31 +958,82 @@ public final class GoAi {
         return seed;
     }
     
+    public ConvolutionBackend getBackend() {
+        return backend;
+    }
+    
+    public Precision getPrecision() {
+        return precision;
+    }
+    
+    public int getParallelism() {
+        return scheduler.getParallelism();
+    }
+    
+    public Optional<EvaluationCache> getCache() {
+        return Optional.ofNullable(cache);
+    }
+    
+    public GoAiMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // Writes this GoAi's dimensions, seed and weights to a checkpoint that newBuilder(Path) can reopen.  The weights
+    // must not change while they are written.
+    public void save( Path path ) throws IOException {
+        Checkpoint.write(path, boardSize, layers - 1, channels, seed, network);
+    }
+    
+    // Stops the threads that run this GoAi's layers in parallel.  A closed GoAi still evaluates Games, but only on the
+    // calling thread.
+    @Override
+    public void close() {
+        scheduler.shutdown();
+    }
+    
+    static int getInputChannelCount() {
+        return InputChannels.count;
+    }
+    
     public Evaluation evaluate( Game game ) {
         return evaluate(game, true);
     }
     
     public Evaluation evaluate( Game game, boolean parallelize ) {
         validateGame(game);
-        
+        return runEvaluation(game, null, parallelize);
+    }
+    
+    public Evaluation evaluate( Game game, Evaluation previous ) {
+        return evaluate(game, previous, true);
+    }
+    
+    // Evaluates a Game reached by playing a single Move in the Game that previous evaluated.  Rather than encoding the
+    // Game from scratch, this updates a copy of previous's encoding with the Move's effects.  The previous Evaluation
+    // is not modified, and may be released once this returns.
+    public Evaluation evaluate( Game game, Evaluation previous, boolean parallelize ) {
+        validateGame(game);
+        validatePrevious(game, previous);
+        return runEvaluation(game, previous, parallelize);
+    }
+    
+    private Evaluation runEvaluation( Game game, Evaluation previous, boolean parallelize ) {
         final Evaluation result;
         try {
-            if (TIME) {
-                double[][][] input = time(() -> encode(game), "GoAi.encode(Game)");
-                result = time(() -> new Evaluation(game, input), "Evaluation constructor");
-                if (parallelize) {
-                    time(() -> runNetworkWithParallelizedLayers(result), "neural network with parallelized layers");
-                } else {
-                    time(() -> runNetworkSynchronously(result), "neural network with synchronous layers");
-                }
-            } else {
-                double[][][] input = encode(game);
-                result = new Evaluation(game, input);
+            long start = System.nanoTime();
+            result = acquireEvaluation(game, previous);
+            start = ACQUIRE_EVALUATION.lap(start);
+            boolean restored = restoreFromCache(result, previous);
+            start = RESTORE_FROM_CACHE.lap(start);
+            if (!restored) {
                 if (parallelize) {
                     runNetworkWithParallelizedLayers(result);
+                    PARALLELIZED_NETWORK.lap(start);
                 } else {
                     runNetworkSynchronously(result);
+                    SYNCHRONOUS_NETWORK.lap(start);
                 }
+                storeInCache(result);
             }
         } catch (Exception e) {
             String message = String.format("Evaluating a Game should never fail, but it failed for\n%s", game);
@@ -514,6 +1043,176 @@ public final class GoAi {
         return result;
     }
     
+    public List<Evaluation> evaluateAll( List<Game> games ) {
+        return evaluateAll(games, true);
+    }
+    
+    // Evaluating a batch runs each layer once for every Game in the batch, so every Neuron's weights are loaded once per
+    // batch instead of once per Game.  Each returned Evaluation is independent of the others, and may be released on
+    // its own.
+    public List<Evaluation> evaluateAll( List<Game> games, boolean parallelize ) {
+        validateGames(games);
+        return runBatch(games, null, parallelize);
+    }
+    
+    // Evaluates a batch in which each Game may follow the Game of the Evaluation at the same index by a single Move, as
+    // evaluate(game, previous) does for a single Game.  A null previous Evaluation means that its Game is encoded from
+    // scratch.  None of the previous Evaluations are modified, and they may be released once this returns.
+    public List<Evaluation> evaluateAll( List<Game> games, List<Evaluation> previous, boolean parallelize ) {
+        validateGames(games);
+        if (previous == null || previous.size() != games.size()) {
+            String message = String.format(
+                "There must be a previous Evaluation or null for each of the %d Games, but received %s.",
+                games.size(),
+                previous == null ? null : previous.size()
+            );
+            throw new IllegalArgumentException(message);
+        }
+        for (int i = 0; i < games.size(); ++i) {
+            if (previous.get(i) != null) {
+                validatePrevious(games.get(i), previous.get(i));
+            }
+        }
+        
+        return runBatch(games, previous, parallelize);
+    }
+    
+    private List<Evaluation> runBatch( List<Game> games, List<Evaluation> previous, boolean parallelize ) {
+        final Evaluation[] batch = new Evaluation[games.size()];
+        if (batch.length > 0) {
+            try {
+                long start = System.nanoTime();
+                prepareBatch(games, previous, batch);
+                start = PREPARE_BATCH.lap(start, batch.length);
+                Evaluation[] misses = restoreBatchFromCache(batch, previous);
+                start = RESTORE_BATCH_FROM_CACHE.lap(start, batch.length);
+                runNetwork(misses, parallelize);
+                BATCH_NETWORK.lap(start, misses.length);
+                storeBatchInCache(misses);
+            } catch (Exception e) {
+                String message = String.format(
+                    "Evaluating a batch of Games should never fail, but it failed for\n%s",
+                    games
+                );
+                throw new IllegalStateException(message, e);
+            }
+        }
+        
+        return Arrays.asList(batch);
+    }
+    
+    private void validateGames( List<Game> games ) {
+        if (games == null) {
+            throw new IllegalArgumentException("The List of Games may not be null.");
+        }
+        
+        for (Game game : games) {
+            validateGame(game);
+        }
+    }
+    
+    private void prepareBatch( List<Game> games, List<Evaluation> previous, Evaluation[] batch ) throws Exception {
+        for (int item = 0; item < batch.length; ++item) {
+            Game game = games.get(item);
+            batch[item] = acquireEvaluation(game, previous == null ? null : previous.get(item));
+        }
+    }
+    
+    // Returns true if the Evaluation's Scores were found in the cache, in which case the network need not be run.  The
+    // previous Evaluation's hash, if there is one, is advanced by the Move played instead of hashing the whole board.
+    private boolean restoreFromCache( Evaluation workspace, Evaluation previous ) {
+        boolean restored = false;
+        if (cache != null) {
+            if (previous != null && previous.hash != null) {
+                workspace.hash = previous.hash.advance(workspace.game);
+            } else {
+                workspace.hash = new ZobristHash(workspace.game);
+            }
+            List<Score> scores = cache.lookup(workspace.hash);
+            if (scores != null) {
+                workspace.restoreScores(scores);
+                restored = true;
+            }
+        }
+        return restored;
+    }
+    
+    private void storeInCache( Evaluation workspace ) {
+        if (cache != null) {
+            cache.store(workspace.hash, workspace.getScores());
+        }
+    }
+    
+    // Returns the Evaluations of the batch that the cache could not supply.
+    private Evaluation[] restoreBatchFromCache( Evaluation[] batch, List<Evaluation> previous ) {
+        Evaluation[] misses = batch;
+        if (cache != null) {
+            int count = 0;
+            misses = new Evaluation[batch.length];
+            for (int item = 0; item < batch.length; ++item) {
+                Evaluation workspace = batch[item];
+                if (!restoreFromCache(workspace, previous == null ? null : previous.get(item))) {
+                    misses[count++] = workspace;
+                }
+            }
+            misses = Arrays.copyOf(misses, count);
+        }
+        return misses;
+    }
+    
+    private void storeBatchInCache( Evaluation[] batch ) {
+        for (Evaluation workspace : batch) {
+            storeInCache(workspace);
+        }
+    }
+    
+    // Workspaces are reused most-recently-released first, since those are the likeliest to still be in cache.
+    private Evaluation acquireEvaluation( Game game, Evaluation previous ) throws Exception {
+        boolean measure = metrics.isEnabled();
+        long start = measure ? System.nanoTime() : 0;
+        Evaluation workspace;
+        synchronized (pool) {
+            workspace = pool.pollFirst();
+        }
+        
+        if (workspace == null) {
+            workspace = new Evaluation();
+        }
+        
+        workspace.prepare(game, previous);
+        if (measure) {
+            metrics.recordConstruction(System.nanoTime() - start);
+        }
+        return workspace;
+    }
+    
+    private void reclaim( Evaluation workspace ) {
+        synchronized (pool) {
+            if (pool.size() < POOL_CAPACITY) {
+                pool.addFirst(workspace);
+            }
+        }
+    }
+    
+    // A ConvolutionScratch is only needed while a layer runs, so the scratches are checked out for each run of the
+    // network instead of belonging to the Evaluations.  No more runs than the parallelism can make progress at once, so
+    // any scratches beyond that are left to the garbage collector.
+    private ConvolutionScratch acquireScratch() {
+        ConvolutionScratch scratch;
+        synchronized (scratches) {
+            scratch = scratches.pollFirst();
+        }
+        return scratch == null ? new ConvolutionScratch() : scratch;
+    }
+    
+    private void reclaimScratch( ConvolutionScratch scratch ) {
+        synchronized (scratches) {
+            if (scratches.size() < scheduler.getParallelism()) {
+                scratches.addFirst(scratch);
+            }
+        }
+    }
+    
     private void validateGame( Game game ) {
         if (game == null || game.isOver()) {
             String message = String.format("Received an unevaluatable game:\n%s", game);
@@ -521,49 +1220,149 @@ public final class GoAi {
         }
     }
     
-    private double[][][] encode( Game game ) throws Exception {
-        final double[][][] encoding;
+    void validatePrevious( Game game, Evaluation previous ) {
+        if (previous == null) {
+            throw new IllegalArgumentException("The previous Evaluation may not be null.");
+        }
+        
+        previous.validateNotReleased();
+        if (previous.getOwner() != this) {
+            throw new IllegalArgumentException("The previous Evaluation was made by a different GoAi.");
+        }
         
-        int padding = layers > 1 ? 2 : 0;
-        int breadth = boardSize + padding * 2;
+        if (game.getMovesPlayed() == 0 || game.getPreviousState() != previous.game) {
+            String message = String.format(
+                "The Game must follow the previous Evaluation's Game by a single Move, but received\n%s\nafter\n%s",
+                game,
+                previous.game
+            );
+            throw new IllegalArgumentException(message);
+        }
+    }
+    
+    private int getInputPadding() {
+        return layers > 1 ? 2 : 0;
+    }
+    
+    // The benchmarks module encodes into a Tensor of its own through these.
+    Tensor createInputTensor() {
+        int padding = getInputPadding();
+        return new Tensor(InputChannels.count, boardSize + padding * 2);
+    }
+    
+    void encode( Game game, Set<Move> legalMoves, Tensor encoding ) throws Exception {
+        int padding = getInputPadding();
         
-        encoding = new double[InputChannels.count][breadth][breadth];
+        encoding.clear();
         prepareOnBoardChannel(encoding, padding);
         prepareOffBoardChannel(encoding, padding);
-        populateGameSpecificChannel(game, encoding, padding);
+        populateGameSpecificChannel(game, legalMoves, encoding, padding);
+    }
+    
+    // The board channels never change, and the IncrementalEncoder handles the stone and liberty channels.  Only the
+    // legality channels are rebuilt, from the legal moves the Evaluation needs anyway and from the Game after a pass.
+    // When a pass would end the game, the position before the opponent's pass is exactly the previous Evaluation's, so
+    // its legal move channels are copied instead of asking the Game for that position's legal moves again.
+    private void encodeIncrementally(
+        Game game,
+        Set<Move> legalMoves,
+        Tensor previous,
+        IncrementalEncoder encoder,
+        Tensor encoding
+    ) throws Exception {
+        int padding = getInputPadding();
+        
+        System.arraycopy(previous.values, 0, encoding.values, 0, encoding.values.length);
+        encoder.update(encoding, game, game.getPreviousMove());
+        
+        if (game.wouldPassEndGame()) {
+            encoding.copyChannel(LEGAL_MOVE.ordinal(), OPPONENT_COULD_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal());
+            encoding.copyChannel(ILLEGAL_MOVE.ordinal(), OPPONENT_COULD_NOT_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal());
+        }
+        
+        for (int channel : REFRESHED_CHANNELS) {
+            encoding.clearChannel(channel);
+        }
+        
+        populateMoveChannels(legalMoves, LEGAL_MOVE, ILLEGAL_MOVE, encoding, padding);
+        populateMoveChannels(
+            game.pass().getLegalMoves(),
+            OPPONENT_COULD_PLAY_AFTER_PASS,
+            OPPONENT_COULD_NOT_PLAY_AFTER_PASS,
+            encoding,
+            padding
+        );
+        
+        if (!game.wouldPassEndGame()) {
+            encoding.copyChannel(
+                OPPONENT_COULD_PLAY_AFTER_PASS.ordinal(),
+                OPPONENT_COULD_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal()
+            );
+            encoding.copyChannel(
+                OPPONENT_COULD_NOT_PLAY_AFTER_PASS.ordinal(),
+                OPPONENT_COULD_NOT_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal()
+            );
+        }
+        
+        if (VERIFY_INCREMENTAL_ENCODING) {
+            verifyIncrementalEncoding(game, legalMoves, encoding);
+        }
+    }
+    
+    private void verifyIncrementalEncoding( Game game, Set<Move> legalMoves, Tensor encoding ) throws Exception {
+        Tensor expected = new Tensor(encoding.channels, encoding.breadth);
+        encode(game, legalMoves, expected);
         
-        return encoding;
+        for (int channel = 0; channel < encoding.channels; ++channel) {
+            for (int row = 0; row < encoding.breadth; ++row) {
+                for (int column = 0; column < encoding.breadth; ++column) {
+                    double actual = encoding.get(channel, row, column);
+                    if (actual != expected.get(channel, row, column)) {
+                        String message = String.format(
+                            "The incremental encoding has %s in channel %s at row %d, column %d, but the full " +
+                            "encoding has %s for\n%s",
+                            actual,
+                            InputChannels.values()[channel],
+                            row,
+                            column,
+                            expected.get(channel, row, column),
+                            game
+                        );
+                        throw new IllegalStateException(message);
+                    }
+                }
+            }
+        }
     }
     
-    private void prepareOnBoardChannel( double[][][] encoding, int offset ) {
+    private void prepareOnBoardChannel( Tensor encoding, int offset ) {
         int channel = ON_BOARD.ordinal();
         for (Coordinate coordinate : Coordinate.iterateOverBoard(boardSize)) {
             int row = coordinate.getRow() - 1 + offset;
             int column = coordinate.getColumn() - 1 + offset;
-            encoding[channel][row][column] = 1.;
+            encoding.set(channel, row, column, 1.);
         }
     }
     
-    private void prepareOffBoardChannel( double[][][] encoding, int offset ) {
+    private void prepareOffBoardChannel( Tensor encoding, int offset ) {
         if (offset > 0) {
             int channel = OFF_BOARD.ordinal();
-            int breadth = encoding[channel].length;
+            int breadth = encoding.breadth;
             int edge = boardSize - 1 + offset;
             for (int row = 0; row < breadth; ++row) {
                 for (int column = 0; column < breadth; ++column) {
                     if (row < offset || row > edge || column < offset || column > edge) {
-                        encoding[channel][row][column] = 1.;
+                        encoding.set(channel, row, column, 1.);
                     }
                 }
             }
         }
     }
     
-    private void populateGameSpecificChannel( Game game, double[][][] encoding, int offset ) {
+    private void populateGameSpecificChannel( Game game, Set<Move> legalMoves, Tensor encoding, int offset ) {
         int channels = InputChannels.count;
         Player player = game.getCurrentPlayer();
         Player opponent = player.getOpposite();
-        Set<Move> legalMoves = game.getLegalMoves();
         
         Game afterPass = game.pass();
         Set<Move> opponentMovesAfterPass = afterPass.getLegalMoves();
@@ -582,32 +1381,30 @@ public final class GoAi {
             
             Intersection value = game.get(coordinate);
             if (value.equals(player)) {
-                encoding[PLAYER_STONE.ordinal()][row][column] = 1.;
+                encoding.set(PLAYER_STONE.ordinal(), row, column, 1.);
             } else if (value.equals(opponent)) {
-                encoding[OPPONENT_STONE.ordinal()][row][column] = 1.;
-            } else {
-                encoding[NO_STONE.ordinal()][row][column] = 1.;
-            }
-            
-            if (legalMoves.contains(coordinate)) {
-                encoding[LEGAL_MOVE.ordinal()][row][column] = 1.;
-            } else {
-                encoding[ILLEGAL_MOVE.ordinal()][row][column] = 1.;
-            }
-            
-            if (opponentMovesAfterPass.contains(coordinate)) {
-                encoding[OPPONENT_COULD_PLAY_AFTER_PASS.ordinal()][row][column] = 1.;
+                encoding.set(OPPONENT_STONE.ordinal(), row, column, 1.);
             } else {
-                encoding[OPPONENT_COULD_NOT_PLAY_AFTER_PASS.ordinal()][row][column] = 1.;
-            }
-            
-            if (opponentMovesAfterPlay.contains(coordinate)) {
-                encoding[OPPONENT_COULD_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal()][row][column] = 1.;
-            } else {
-                encoding[OPPONENT_COULD_NOT_PLAY_IF_PASS_DID_NOT_END_GAME.ordinal()][row][column] = 1.;
+                encoding.set(NO_STONE.ordinal(), row, column, 1.);
             }
         }
         
+        populateMoveChannels(legalMoves, LEGAL_MOVE, ILLEGAL_MOVE, encoding, offset);
+        populateMoveChannels(
+            opponentMovesAfterPass,
+            OPPONENT_COULD_PLAY_AFTER_PASS,
+            OPPONENT_COULD_NOT_PLAY_AFTER_PASS,
+            encoding,
+            offset
+        );
+        populateMoveChannels(
+            opponentMovesAfterPlay,
+            OPPONENT_COULD_PLAY_IF_PASS_DID_NOT_END_GAME,
+            OPPONENT_COULD_NOT_PLAY_IF_PASS_DID_NOT_END_GAME,
+            encoding,
+            offset
+        );
+        
         for (Group group : game.getGroupsOfStones()) {
             int channel = group.liberties + LIBERTIES_ONE.ordinal() - 1;
             if (channel >= channels) {
@@ -617,44 +1414,210 @@ public final class GoAi {
             for (Coordinate member : group.members) {
                 int row = member.getRow() - 1 + offset;
                 int column = member.getColumn() - 1 + offset;
-                encoding[channel][row][column] = 1.;
+                encoding.set(channel, row, column, 1.);
             }
         }
     }
     
-    private void runNetworkSynchronously( Evaluation workspace ) {
-        for (int layer = 0; layer < layers; ++layer) {
-            Neuron[] currentLayer = network[layer];
-            
-            int count = layer < layers - 1 ? channels : 4;
-            for (int channel = 0; channel < count; ++channel) {
-                Neuron convolution = currentLayer[channel];
-                GoAi.runConvolution(convolution, layer, channel, workspace);
+    private void populateMoveChannels(
+        Set<Move> moves,
+        InputChannels playable,
+        InputChannels unplayable,
+        Tensor encoding,
+        int offset
+    ) {
+        for (Coordinate coordinate : Coordinate.iterateOverBoard(boardSize)) {
+            int row = coordinate.getRow() - 1 + offset;
+            int column = coordinate.getColumn() - 1 + offset;
+            if (moves.contains(coordinate)) {
+                encoding.set(playable.ordinal(), row, column, 1.);
+            } else {
+                encoding.set(unplayable.ordinal(), row, column, 1.);
             }
         }
     }
     
+    private void runNetworkSynchronously( Evaluation workspace ) {
+        runNetwork(workspace, false);
+    }
+    
     private void runNetworkWithParallelizedLayers( Evaluation workspace ) {
-        List<RecursiveAction> tasks = new ArrayList<>();
+        runNetwork(workspace, true);
+    }
+    
+    private void runNetwork( Evaluation workspace, boolean parallelize ) {
+        runNetwork(
+            workspace.batch,
+            workspace.batchInputs,
+            workspace.batchActivations,
+            workspace.batchOrientations,
+            parallelize
+        );
+    }
+    
+    void runNetwork( Evaluation[] batch, boolean parallelize ) {
+        if (batch.length == 0) {
+            return;
+        }
         
-        for (int layer = 0; layer < layers; ++layer) {
-            Neuron[] currentLayer = network[layer];
-            
-            tasks.clear();
-            int count = layer < layers - 1 ? channels : 4;
-            for (int channel = 0; channel < count; ++channel) {
-                Neuron convolution = currentLayer[channel];
-                NeuronRunner task = new NeuronRunner(convolution, layer, channel, workspace);
-                task.fork();
-                tasks.add(task);
+        Tensor[] inputs = new Tensor[batch.length];
+        Tensor[] activations = new Tensor[batch.length];
+        int[][] orientations = new int[batch.length][];
+        runNetwork(batch, inputs, activations, orientations, parallelize);
+    }
+    
+    Neuron[][] getNetwork() {
+        return network;
+    }
+    
+    TileScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    // Encodes a Trainer's example into a workspace, whose network has yet to be run.  Its targets must be legal moves.
+    Evaluation prepareTrainingExample( Game game, List<Score> targets ) throws Exception {
+        validateGame(game);
+        Evaluation workspace = acquireEvaluation(game, null);
+        try {
+            workspace.prepareForBackpropagation(targets);
+        } catch (IllegalArgumentException e) {
+            workspace.release();
+            throw e;
+        }
+        return workspace;
+    }
+    
+    // Returns the workspace's loss, which is half the sum of the squared differences between its targeted outputs and
+    // their targets, and adds the gradients of that loss to gradient.  Each layer's errors are propagated back from
+    // the output layer's through the Neurons that produced them.  Workspaces may be backpropagated concurrently into
+    // different Gradients.
+    double backpropagate( Evaluation workspace, Gradient gradient ) {
+        workspace.validateNotReleased();
+        if (!workspace.hasTargets) {
+            throw new IllegalStateException("The Evaluation was not prepared as a training example.");
+        }
+        
+        Tensor output = workspace.activations[layers - 1];
+        Tensor outputErrors = workspace.errors[layers - 1];
+        double loss = 0.;
+        for (int i = 0; i < output.values.length; ++i) {
+            double target = workspace.expected.values[i];
+            if (Double.isNaN(target)) {
+                outputErrors.values[i] = 0.;
+            } else {
+                double difference = output.values[i] - target;
+                outputErrors.values[i] = difference;
+                loss += 0.5 * difference * difference;
+            }
+        }
+        
+        for (int layer = layers - 1; layer >= 0; --layer) {
+            Tensor input = layer == 0 ? workspace.input : workspace.activations[layer - 1];
+            Tensor inputErrors = layer == 0 ? null : workspace.errors[layer - 1];
+            Tensor layerErrors = workspace.errors[layer];
+            int[] orientation = workspace.orientations[layer];
+            if (inputErrors != null) {
+                inputErrors.clear();
             }
             
-            for (RecursiveAction task : tasks) {
-                task.join();
+            for (int channel = 0; channel < network[layer].length; ++channel) {
+                Neuron neuron = network[layer][channel];
+                int index = gradient.getIndex(layer, channel);
+                double[] weightGradients = gradient.weights[index];
+                int cells = input.breadth - neuron.width + 1;
+                double biasGradient = 0.;
+                
+                for (int row = 0; row < cells; ++row) {
+                    for (int column = 0; column < cells; ++column) {
+                        double error = layerErrors.get(
+                            channel,
+                            row + neuron.outputPadding,
+                            column + neuron.outputPadding
+                        );
+                        if (error != 0.) {
+                            biasGradient += error;
+                            neuron.backpropagate(
+                                input,
+                                row,
+                                column,
+                                error,
+                                inputErrors,
+                                channel,
+                                orientation,
+                                weightGradients
+                            );
+                        }
+                    }
+                }
+                gradient.biases[index] += biasGradient;
             }
         }
         
-        tasks.clear();
+        return loss;
+    }
+    
+    // Makes the engine and the cache see the weights that a Trainer changed.
+    void refreshWeights() {
+        engine.refreshWeights();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+    
+    // Recomputes a single layer of an Evaluation from its previous layer, which the benchmarks module uses to measure
+    // the engine alone.
+    void runLayer( Evaluation workspace, int layer, boolean parallelize ) {
+        if (layer < 0 || layer >= layers) {
+            String message = String.format("The layer must be between 0 and %d, but it was %d.", layers - 1, layer);
+            throw new IllegalArgumentException(message);
+        }
+        workspace.validateNotReleased();
         
+        workspace.batchInputs[0] = layer == 0 ? workspace.input : workspace.activations[layer - 1];
+        workspace.batchActivations[0] = workspace.activations[layer];
+        workspace.batchOrientations[0] = workspace.orientations[layer];
+        ConvolutionScratch scratch = acquireScratch();
+        try {
+            engine.runLayer(
+                layer,
+                workspace.batchInputs,
+                workspace.batchActivations,
+                workspace.batchOrientations,
+                scratch,
+                parallelize
+            );
+        } finally {
+            reclaimScratch(scratch);
+        }
+    }
+    
+    // The inputs, activations and orientations arrays are filled with each batch item's views of the current layer.
+    private void runNetwork(
+        Evaluation[] batch,
+        Tensor[] inputs,
+        Tensor[] activations,
+        int[][] orientations,
+        boolean parallelize
+    ) {
+        ConvolutionScratch scratch = acquireScratch();
+        try {
+            for (int layer = 0; layer < layers; ++layer) {
+                for (int item = 0; item < batch.length; ++item) {
+                    Evaluation workspace = batch[item];
+                    inputs[item] = layer == 0 ? workspace.input : workspace.activations[layer - 1];
+                    activations[item] = workspace.activations[layer];
+                    orientations[item] = workspace.orientations[layer];
+                }
+                
+                boolean measure = metrics.isEnabled();
+                long start = measure ? System.nanoTime() : 0;
+                engine.runLayer(layer, inputs, activations, orientations, scratch, parallelize);
+                if (measure) {
+                    metrics.recordLayer(layer, batch.length, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            reclaimScratch(scratch);
+        }
     }
 }
@@ -0,0 +1,239 @@
+package com.sadakatsu.goai;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// GoAiMetrics records where a GoAi spends its time: each layer's latency, the multiply-accumulates per second that the
+// layers sustain, and the time taken to encode Games, to construct Evaluations, and to read their Scores.  Recording
+// is off unless the "goai.metrics" system property is "true", and can be switched on and off while the GoAi runs;
+// when it is off, the GoAi does not even read the clock.
+//
+// The metrics can be polled with snapshot(), or through JMX once registerMBean() is called.  A layer's latency is that
+// of running the layer for a whole batch, so the layer times of batched evaluations are not comparable to those of
+// single ones.
+public final class GoAiMetrics implements GoAiMetricsMBean {
+    public static final class Snapshot {
+        private final long evaluations;
+        private final double macsPerSecond;
+        private final List<LatencyHistogram.Snapshot> layers;
+        private final LatencyHistogram.Snapshot encoding;
+        private final LatencyHistogram.Snapshot construction;
+        private final LatencyHistogram.Snapshot scores;
+        
+        private Snapshot(
+            long evaluations,
+            double macsPerSecond,
+            List<LatencyHistogram.Snapshot> layers,
+            LatencyHistogram.Snapshot encoding,
+            LatencyHistogram.Snapshot construction,
+            LatencyHistogram.Snapshot scores
+        ) {
+            this.evaluations = evaluations;
+            this.macsPerSecond = macsPerSecond;
+            this.layers = Collections.unmodifiableList(layers);
+            this.encoding = encoding;
+            this.construction = construction;
+            this.scores = scores;
+        }
+        
+        // The number of positions that ran through the network.
+        public long getEvaluations() {
+            return evaluations;
+        }
+        
+        public double getMacsPerSecond() {
+            return macsPerSecond;
+        }
+        
+        public List<LatencyHistogram.Snapshot> getLayers() {
+            return layers;
+        }
+        
+        public LatencyHistogram.Snapshot getEncoding() {
+            return encoding;
+        }
+        
+        // Constructing an Evaluation includes taking a workspace from the pool and encoding its Game.
+        public LatencyHistogram.Snapshot getConstruction() {
+            return construction;
+        }
+        
+        public LatencyHistogram.Snapshot getScores() {
+            return scores;
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(
+                "GoAiMetrics{ evaluations=%d, macsPerSecond=%.3g%n",
+                evaluations,
+                macsPerSecond
+            ));
+            for (int layer = 0; layer < layers.size(); ++layer) {
+                builder.append(String.format("  layer %d: %s%n", layer, layers.get(layer)));
+            }
+            builder.append(String.format("  encoding: %s%n", encoding));
+            builder.append(String.format("  construction: %s%n", construction));
+            builder.append(String.format("  scores: %s%n}", scores));
+            return builder.toString();
+        }
+    }
+    
+    private final long[] layerMacs;
+    private final LatencyHistogram[] layers;
+    private final LatencyHistogram encoding = new LatencyHistogram();
+    private final LatencyHistogram construction = new LatencyHistogram();
+    private final LatencyHistogram scores = new LatencyHistogram();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder macs = new LongAdder();
+    private final LongAdder layerNanos = new LongAdder();
+    
+    private volatile boolean enabled = Boolean.getBoolean("goai.metrics");
+    private ObjectName name;
+    
+    // The layerMacs are the multiply-accumulates that each layer performs for a single position.
+    GoAiMetrics( long[] layerMacs ) {
+        this.layerMacs = layerMacs.clone();
+        this.layers = new LatencyHistogram[layerMacs.length];
+        for (int layer = 0; layer < layers.length; ++layer) {
+            layers[layer] = new LatencyHistogram();
+        }
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    @Override
+    public void setEnabled( boolean enabled ) {
+        this.enabled = enabled;
+    }
+    
+    void recordLayer( int layer, int positions, long nanos ) {
+        layers[layer].record(nanos);
+        macs.add(layerMacs[layer] * positions);
+        layerNanos.add(nanos);
+        if (layer == 0) {
+            evaluations.add(positions);
+        }
+    }
+    
+    void recordEncoding( long nanos ) {
+        encoding.record(nanos);
+    }
+    
+    void recordConstruction( long nanos ) {
+        construction.record(nanos);
+    }
+    
+    void recordScores( long nanos ) {
+        scores.record(nanos);
+    }
+    
+    @Override
+    public void reset() {
+        for (LatencyHistogram layer : layers) {
+            layer.reset();
+        }
+        encoding.reset();
+        construction.reset();
+        scores.reset();
+        evaluations.reset();
+        macs.reset();
+        layerNanos.reset();
+    }
+    
+    public Snapshot snapshot() {
+        List<LatencyHistogram.Snapshot> layerSnapshots = new ArrayList<>(layers.length);
+        for (LatencyHistogram layer : layers) {
+            layerSnapshots.add(layer.snapshot());
+        }
+        return new Snapshot(
+            evaluations.sum(),
+            getMacsPerSecond(),
+            layerSnapshots,
+            encoding.snapshot(),
+            construction.snapshot(),
+            scores.snapshot()
+        );
+    }
+    
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+    
+    @Override
+    public double getMacsPerSecond() {
+        long nanos = layerNanos.sum();
+        return nanos == 0 ? 0. : macs.sum() * 1e9 / nanos;
+    }
+    
+    @Override
+    public double[] getLayerMeanMicros() {
+        double[] means = new double[layers.length];
+        for (int layer = 0; layer < layers.length; ++layer) {
+            means[layer] = layers[layer].snapshot().getMeanNanos() / 1e3;
+        }
+        return means;
+    }
+    
+    @Override
+    public double[] getLayerP99Micros() {
+        double[] percentiles = new double[layers.length];
+        for (int layer = 0; layer < layers.length; ++layer) {
+            percentiles[layer] = layers[layer].snapshot().getNanosAtPercentile(99.) / 1e3;
+        }
+        return percentiles;
+    }
+    
+    @Override
+    public double getEncodingMeanMicros() {
+        return encoding.snapshot().getMeanNanos() / 1e3;
+    }
+    
+    @Override
+    public double getConstructionMeanMicros() {
+        return construction.snapshot().getMeanNanos() / 1e3;
+    }
+    
+    @Override
+    public double getScoresMeanMicros() {
+        return scores.snapshot().getMeanNanos() / 1e3;
+    }
+    
+    // Registers these metrics with the platform MBeanServer under com.sadakatsu.goai:type=GoAiMetrics and the passed
+    // name, which must be unique among the registered GoAis.
+    public synchronized ObjectName registerMBean( String label ) throws JMException {
+        if (label == null) {
+            throw new IllegalArgumentException("The label may not be null.");
+        }
+        if (name != null) {
+            String message = String.format("These GoAiMetrics are already registered as %s.", name);
+            throw new IllegalStateException(message);
+        }
+        
+        ObjectName candidate = new ObjectName("com.sadakatsu.goai", "type", "GoAiMetrics");
+        candidate = ObjectName.getInstance(candidate + ",name=" + ObjectName.quote(label));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+        name = candidate;
+        return name;
+    }
+    
+    public synchronized void unregisterMBean() throws JMException {
+        if (name != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(name);
+            name = null;
+        }
+    }
+}
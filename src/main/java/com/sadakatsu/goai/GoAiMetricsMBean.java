@@ -0,0 +1,24 @@
+package com.sadakatsu.goai;
+
+// The JMX view of a GoAi's metrics.  The times are in microseconds, and the layer arrays are indexed by layer.
+public interface GoAiMetricsMBean {
+    boolean isEnabled();
+    
+    void setEnabled( boolean enabled );
+    
+    void reset();
+    
+    long getEvaluations();
+    
+    double getMacsPerSecond();
+    
+    double[] getLayerMeanMicros();
+    
+    double[] getLayerP99Micros();
+    
+    double getEncodingMeanMicros();
+    
+    double getConstructionMeanMicros();
+    
+    double getScoresMeanMicros();
+}
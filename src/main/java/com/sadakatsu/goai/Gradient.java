@@ -0,0 +1,44 @@
+package com.sadakatsu.goai;
+
+import java.util.Arrays;
+
+import com.sadakatsu.goai.GoAi.Neuron;
+
+// A Gradient holds one value for every bias and weight of a GoAi's network, with the Neurons numbered layer by layer
+// in the order the network holds them.  A Trainer uses them for the gradients each worker accumulates, and for its
+// Optimizer's running state.
+final class Gradient {
+    private final int[] layerStarts;
+    final double[] biases;
+    final double[][] weights;
+    
+    Gradient( Neuron[][] network ) {
+        layerStarts = new int[network.length + 1];
+        for (int layer = 0; layer < network.length; ++layer) {
+            layerStarts[layer + 1] = layerStarts[layer] + network[layer].length;
+        }
+        
+        biases = new double[layerStarts[network.length]];
+        weights = new double[biases.length][];
+        for (int layer = 0; layer < network.length; ++layer) {
+            for (int neuron = 0; neuron < network[layer].length; ++neuron) {
+                weights[getIndex(layer, neuron)] = new double[network[layer][neuron].weights.length];
+            }
+        }
+    }
+    
+    int getIndex( int layer, int neuron ) {
+        return layerStarts[layer] + neuron;
+    }
+    
+    int getNeuronCount() {
+        return biases.length;
+    }
+    
+    void clear() {
+        Arrays.fill(biases, 0.);
+        for (double[] neuron : weights) {
+            Arrays.fill(neuron, 0.);
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.sadakatsu.goai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sadakatsu.goai.GoAi.Neuron;
+
+// Im2ColConvolutionEngine lowers a layer's input into a matrix with one row per output cell and one column per weight
+// of a kernel (the "im2col" transformation), then multiplies it by a matrix holding every orientation of every Neuron's
+// weights in the layer.  The Neurons' orientations are then reduced to each Neuron's best one.
+//
+// The products are accumulated starting from each Neuron's bias and proceed through the kernel in the same channel,
+// row, column order Neuron.calculate() uses.  Blocking the multiplication only changes which products are computed
+// together, never the order in which any single sum is accumulated, so the results match the PER_NEURON backend
+// exactly.
+//
+// In SINGLE precision, the Groups keep only float copies of the weights, and the lowered matrix and the products are
+// floats too.  This halves the memory traffic of the multiplication, which dominates large networks.  The activations
+// between layers stay in the Evaluation's Tensors, but each holds a value that was rounded to a float.
+//
+// Each chunk of a batch runs in two phases of tiles.  The first lowers a band of the matrix's rows per tile.  The
+// second multiplies a band of rows by a block of whole Neurons' columns per tile, then reduces their orientations.
+final class Im2ColConvolutionEngine implements ConvolutionEngine {
+    // A Group is a contiguous run of a layer's Neurons that share a kernel shape, and can thus share a lowered input.
+    // Its weights are stored column by column so that every output is a dot product of two contiguous rows.  Only the
+    // arrays for the engine's Precision are kept.
+    private static final class Group {
+        final int first;
+        final int count;
+        final int width;
+        final int inputChannels;
+        final int orientations;
+        final int outputPadding;
+        final int depth;
+        final int columns;
+        final double[] biases;
+        final double[] weights;
+        final float[] singleBiases;
+        final float[] singleWeights;
+        
+        Group( Neuron[] neurons, int first, int count, Precision precision ) {
+            Neuron exemplar = neurons[first];
+            
+            this.first = first;
+            this.count = count;
+            this.width = exemplar.width;
+            this.inputChannels = exemplar.channels;
+            this.orientations = exemplar.getOrientationCount();
+            this.outputPadding = exemplar.outputPadding;
+            this.depth = inputChannels * width * width;
+            this.columns = count * orientations;
+            
+            if (precision == Precision.SINGLE) {
+                this.biases = null;
+                this.weights = null;
+                this.singleBiases = new float[columns];
+                this.singleWeights = new float[depth * columns];
+            } else {
+                this.biases = new double[columns];
+                this.weights = new double[depth * columns];
+                this.singleBiases = null;
+                this.singleWeights = null;
+            }
+            
+            refresh(neurons);
+        }
+        
+        // Copies the Neurons' current biases and weights into the arrays for the engine's Precision.
+        void refresh( Neuron[] neurons ) {
+            for (int index = 0; index < count; ++index) {
+                Neuron neuron = neurons[first + index];
+                for (int orientation = 0; orientation < orientations; ++orientation) {
+                    int column = index * orientations + orientation;
+                    if (biases != null) {
+                        biases[column] = neuron.bias;
+                    } else {
+                        singleBiases[column] = (float) neuron.bias;
+                    }
+                    
+                    int k = column * depth;
+                    for (int channel = 0; channel < inputChannels; ++channel) {
+                        int channelStart = channel * neuron.area;
+                        for (int row = 0; row < width; ++row) {
+                            for (int kernelColumn = 0; kernelColumn < width; ++kernelColumn, ++k) {
+                                int source = channelStart + neuron.getWeightIndex(orientation, row, kernelColumn);
+                                if (weights != null) {
+                                    weights[k] = neuron.weights[source];
+                                } else {
+                                    singleWeights[k] = (float) neuron.weights[source];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private static final class LayerJob implements TileScheduler.Tile {
+        Group group;
+        Tensor[] inputs;
+        Tensor[] activations;
+        int[][] orientations;
+        int firstItem;
+        int outputBreadth;
+        int cells;
+        int rows;
+        double[] lowered;
+        double[] products;
+        float[] singleLowered;
+        float[] singleProducts;
+        boolean lowering;
+        int neuronBlocks;
+        int rowBands;
+        
+        void prepare(
+            Group group,
+            Tensor[] inputs,
+            Tensor[] activations,
+            int[][] orientations,
+            int firstItem,
+            int lastItem,
+            int outputBreadth,
+            ConvolutionScratch scratch
+        ) {
+            this.group = group;
+            this.inputs = inputs;
+            this.activations = activations;
+            this.orientations = orientations;
+            this.firstItem = firstItem;
+            this.outputBreadth = outputBreadth;
+            this.cells = outputBreadth * outputBreadth;
+            this.rows = (lastItem - firstItem) * cells;
+            
+            if (group.singleWeights != null) {
+                this.singleLowered = scratch.getSingleLowered(rows * group.depth);
+                this.singleProducts = scratch.getSingleProducts(rows * group.columns);
+            } else {
+                this.lowered = scratch.getLowered(rows * group.depth);
+                this.products = scratch.getProducts(rows * group.columns);
+            }
+        }
+        
+        void setTiles( boolean lowering, int neuronBlocks, int rowBands ) {
+            this.lowering = lowering;
+            this.neuronBlocks = neuronBlocks;
+            this.rowBands = rowBands;
+        }
+        
+        void release() {
+            group = null;
+            inputs = null;
+            activations = null;
+            orientations = null;
+            lowered = null;
+            products = null;
+            singleLowered = null;
+            singleProducts = null;
+        }
+        
+        @Override
+        public void run( int tile ) {
+            int block = tile / rowBands;
+            int band = tile % rowBands;
+            int firstRow = TileScheduler.split(rows, rowBands, band);
+            int lastRow = TileScheduler.split(rows, rowBands, band + 1);
+            
+            if (lowering) {
+                lower(this, firstRow, lastRow);
+            } else {
+                int firstNeuron = TileScheduler.split(group.count, neuronBlocks, block);
+                int lastNeuron = TileScheduler.split(group.count, neuronBlocks, block + 1);
+                int firstColumn = firstNeuron * group.orientations;
+                int lastColumn = lastNeuron * group.orientations;
+                
+                if (group.singleWeights != null) {
+                    multiply(group, singleLowered, singleProducts, firstRow, lastRow, firstColumn, lastColumn);
+                } else {
+                    multiply(group, lowered, products, firstRow, lastRow, firstColumn, lastColumn);
+                }
+                reduce(this, firstRow, lastRow, firstNeuron, lastNeuron);
+            }
+        }
+    }
+    
+    private static final int ROW_BLOCK = 16;
+    private static final int COLUMN_BLOCK = 32;
+    
+    // A batch is lowered in chunks so that the lowered matrix never grows beyond this many values (32 MiB).
+    private static final int LOWERED_LIMIT = 1 << 22;
+    
+    private final Neuron[][] network;
+    private final Group[][] groups;
+    private final TileScheduler scheduler;
+    private final ThreadLocal<LayerJob> jobs;
+    
+    Im2ColConvolutionEngine( Neuron[][] network, TileScheduler scheduler, Precision precision ) {
+        this.network = network;
+        this.scheduler = scheduler;
+        this.jobs = ThreadLocal.withInitial(LayerJob::new);
+        
+        groups = new Group[network.length][];
+        for (int layer = 0; layer < network.length; ++layer) {
+            groups[layer] = buildGroups(network[layer], precision);
+        }
+    }
+    
+    private static Group[] buildGroups( Neuron[] neurons, Precision precision ) {
+        List<Group> groups = new ArrayList<>();
+        
+        int first = 0;
+        while (first < neurons.length) {
+            int last = first + 1;
+            while (last < neurons.length && shareKernelShape(neurons[first], neurons[last])) {
+                ++last;
+            }
+            groups.add(new Group(neurons, first, last - first, precision));
+            first = last;
+        }
+        
+        return groups.toArray(new Group[groups.size()]);
+    }
+    
+    private static boolean shareKernelShape( Neuron first, Neuron second ) {
+        return
+            first.width == second.width &&
+            first.channels == second.channels &&
+            first.getOrientationCount() == second.getOrientationCount() &&
+            first.outputPadding == second.outputPadding;
+    }
+    
+    @Override
+    public void refreshWeights() {
+        for (int layer = 0; layer < network.length; ++layer) {
+            for (Group group : groups[layer]) {
+                group.refresh(network[layer]);
+            }
+        }
+    }
+    
+    @Override
+    public void runLayer(
+        int layer,
+        Tensor[] inputs,
+        Tensor[] activations,
+        int[][] orientations,
+        ConvolutionScratch scratch,
+        boolean parallelize
+    ) {
+        int batch = inputs.length;
+        LayerJob job = jobs.get();
+        
+        for (Group group : groups[layer]) {
+            int outputBreadth = inputs[0].breadth - group.width + 1;
+            int cells = outputBreadth * outputBreadth;
+            int itemsPerChunk = Math.max(1, Math.min(batch, LOWERED_LIMIT / (cells * group.depth)));
+            
+            for (int firstItem = 0; firstItem < batch; firstItem += itemsPerChunk) {
+                int lastItem = Math.min(batch, firstItem + itemsPerChunk);
+                int rows = (lastItem - firstItem) * cells;
+                
+                job.prepare(group, inputs, activations, orientations, firstItem, lastItem, outputBreadth, scratch);
+                if (parallelize) {
+                    int target = scheduler.getTargetTiles();
+                    int neuronBlocks = Math.min(group.count, Math.max(1, group.columns / COLUMN_BLOCK));
+                    int rowBands = Math.min(rows, Math.max(1, (target + neuronBlocks - 1) / neuronBlocks));
+                    
+                    job.setTiles(true, 1, Math.min(rows, target));
+                    scheduler.run(job.rowBands, job);
+                    job.setTiles(false, neuronBlocks, rowBands);
+                    scheduler.run(neuronBlocks * rowBands, job);
+                } else {
+                    job.setTiles(true, 1, 1);
+                    job.run(0);
+                    job.setTiles(false, 1, 1);
+                    job.run(0);
+                }
+            }
+        }
+        
+        job.release();
+    }
+    
+    private static void lower( LayerJob job, int firstRow, int lastRow ) {
+        final Group group = job.group;
+        final int width = group.width;
+        final double[] lowered = job.lowered;
+        final float[] singleLowered = job.singleLowered;
+        
+        int target = firstRow * group.depth;
+        for (int row = firstRow; row < lastRow; ++row) {
+            Tensor input = job.inputs[job.firstItem + row / job.cells];
+            int cell = row % job.cells;
+            int outputRow = cell / job.outputBreadth;
+            int outputColumn = cell % job.outputBreadth;
+            
+            for (int channel = 0; channel < group.inputChannels; ++channel) {
+                int source = input.index(channel, outputRow, outputColumn);
+                for (int kernelRow = 0; kernelRow < width; ++kernelRow, source += input.breadth) {
+                    if (singleLowered != null) {
+                        for (int i = 0; i < width; ++i) {
+                            singleLowered[target + i] = (float) input.values[source + i];
+                        }
+                    } else {
+                        System.arraycopy(input.values, source, lowered, target, width);
+                    }
+                    target += width;
+                }
+            }
+        }
+    }
+    
+    private static void multiply(
+        Group group,
+        double[] lowered,
+        double[] products,
+        int firstRow,
+        int lastRow,
+        int firstColumn,
+        int lastColumn
+    ) {
+        final int depth = group.depth;
+        final int columns = group.columns;
+        final double[] weights = group.weights;
+        final double[] biases = group.biases;
+        
+        for (int rowBlock = firstRow; rowBlock < lastRow; rowBlock += ROW_BLOCK) {
+            int rowEnd = Math.min(lastRow, rowBlock + ROW_BLOCK);
+            
+            for (int columnBlock = firstColumn; columnBlock < lastColumn; columnBlock += COLUMN_BLOCK) {
+                int columnEnd = Math.min(lastColumn, columnBlock + COLUMN_BLOCK);
+                
+                for (int row = rowBlock; row < rowEnd; ++row) {
+                    int loweredRow = row * depth;
+                    int productRow = row * columns;
+                    
+                    // Four columns share each load of the lowered row.
+                    int column = columnBlock;
+                    for (; column + 3 < columnEnd; column += 4) {
+                        int weights0 = column * depth;
+                        int weights1 = weights0 + depth;
+                        int weights2 = weights1 + depth;
+                        int weights3 = weights2 + depth;
+                        
+                        double sum0 = biases[column];
+                        double sum1 = biases[column + 1];
+                        double sum2 = biases[column + 2];
+                        double sum3 = biases[column + 3];
+                        for (int k = 0; k < depth; ++k) {
+                            double value = lowered[loweredRow + k];
+                            sum0 += value * weights[weights0 + k];
+                            sum1 += value * weights[weights1 + k];
+                            sum2 += value * weights[weights2 + k];
+                            sum3 += value * weights[weights3 + k];
+                        }
+                        
+                        products[productRow + column] = sum0;
+                        products[productRow + column + 1] = sum1;
+                        products[productRow + column + 2] = sum2;
+                        products[productRow + column + 3] = sum3;
+                    }
+                    
+                    for (; column < columnEnd; ++column) {
+                        int weightRow = column * depth;
+                        double sum = biases[column];
+                        for (int k = 0; k < depth; ++k) {
+                            sum += lowered[loweredRow + k] * weights[weightRow + k];
+                        }
+                        products[productRow + column] = sum;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void multiply(
+        Group group,
+        float[] lowered,
+        float[] products,
+        int firstRow,
+        int lastRow,
+        int firstColumn,
+        int lastColumn
+    ) {
+        final int depth = group.depth;
+        final int columns = group.columns;
+        final float[] weights = group.singleWeights;
+        final float[] biases = group.singleBiases;
+        
+        for (int rowBlock = firstRow; rowBlock < lastRow; rowBlock += ROW_BLOCK) {
+            int rowEnd = Math.min(lastRow, rowBlock + ROW_BLOCK);
+            
+            for (int columnBlock = firstColumn; columnBlock < lastColumn; columnBlock += COLUMN_BLOCK) {
+                int columnEnd = Math.min(lastColumn, columnBlock + COLUMN_BLOCK);
+                
+                for (int row = rowBlock; row < rowEnd; ++row) {
+                    int loweredRow = row * depth;
+                    int productRow = row * columns;
+                    
+                    // Four columns share each load of the lowered row.
+                    int column = columnBlock;
+                    for (; column + 3 < columnEnd; column += 4) {
+                        int weights0 = column * depth;
+                        int weights1 = weights0 + depth;
+                        int weights2 = weights1 + depth;
+                        int weights3 = weights2 + depth;
+                        
+                        float sum0 = biases[column];
+                        float sum1 = biases[column + 1];
+                        float sum2 = biases[column + 2];
+                        float sum3 = biases[column + 3];
+                        for (int k = 0; k < depth; ++k) {
+                            float value = lowered[loweredRow + k];
+                            sum0 += value * weights[weights0 + k];
+                            sum1 += value * weights[weights1 + k];
+                            sum2 += value * weights[weights2 + k];
+                            sum3 += value * weights[weights3 + k];
+                        }
+                        
+                        products[productRow + column] = sum0;
+                        products[productRow + column + 1] = sum1;
+                        products[productRow + column + 2] = sum2;
+                        products[productRow + column + 3] = sum3;
+                    }
+                    
+                    for (; column < columnEnd; ++column) {
+                        int weightRow = column * depth;
+                        float sum = biases[column];
+                        for (int k = 0; k < depth; ++k) {
+                            sum += lowered[loweredRow + k] * weights[weightRow + k];
+                        }
+                        products[productRow + column] = sum;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static void reduce( LayerJob job, int firstRow, int lastRow, int firstNeuron, int lastNeuron ) {
+        final Group group = job.group;
+        final double[] products = job.products;
+        final float[] singleProducts = job.singleProducts;
+        final int orientations = group.orientations;
+        final int columns = group.columns;
+        final int padding = group.outputPadding;
+        final int breadth = job.outputBreadth;
+        
+        for (int row = firstRow; row < lastRow; ++row) {
+            int item = job.firstItem + row / job.cells;
+            int cell = row % job.cells;
+            int outputRow = cell / breadth;
+            int outputColumn = cell % breadth;
+            Tensor activation = job.activations[item];
+            int[] orientation = job.orientations[item];
+            
+            for (int index = firstNeuron; index < lastNeuron; ++index) {
+                int channel = group.first + index;
+                int offset = row * columns + index * orientations;
+                
+                double result = singleProducts != null ? singleProducts[offset] : products[offset];
+                int selected = 0;
+                for (int i = 1; i < orientations; ++i) {
+                    double current = singleProducts != null ? singleProducts[offset + i] : products[offset + i];
+                    if (current > result) {
+                        result = current;
+                        selected = i;
+                    }
+                }
+                
+                activation.set(channel, outputRow + padding, outputColumn + padding, result);
+                if (orientations > 1) {
+                    orientation[(channel * breadth + outputRow) * breadth + outputColumn] = selected;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static com.sadakatsu.goai.GoAi.InputChannels.*;
+
+import java.util.Arrays;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.go.domain.intersection.Player;
+
+// IncrementalEncoder brings a copy of a position's encoding up to date with the position after a Move was played in
+// it.  Only the stone and liberty channels are its concern; GoAi refreshes the channels that depend upon legality.
+//
+// A Move changes very little of the board.  The players trade places, so the player and opponent stone channels are
+// swapped.  The played stone is added, and any of the new current player's groups that it captured are removed.  The
+// only groups whose liberties can change are those touching the played stone or the captured stones, so only those
+// groups are flood filled to recount their liberties.  The flood fills read the stones from the encoding itself, so
+// the Game is only asked about the played stone's neighbors to find the captures.
+//
+// The work arrays are reused from update to update, so an IncrementalEncoder must not be shared between threads.
+final class IncrementalEncoder {
+    private static final int FIRST_LIBERTY_CHANNEL = LIBERTIES_ONE.ordinal();
+    private static final int LAST_LIBERTY_CHANNEL = LIBERTIES_EIGHT_OR_MORE.ordinal();
+    
+    private final int boardSize;
+    private final int padding;
+    
+    // Cells are numbered row by row from the board's upper left corner, ignoring the encoding's padding.
+    private final int[] stack;
+    private final int[] members;
+    private final int[] captured;
+    private final int[] neighbors = new int[4];
+    private final int[] adjacent = new int[4];
+    
+    // A cell belongs to the current update's visited groups if its mark equals visit, and was already counted as a
+    // liberty of the current group if its liberty mark equals libertyVisit.  This avoids clearing the arrays.
+    private final int[] marks;
+    private final int[] libertyMarks;
+    private int visit;
+    private int libertyVisit;
+    
+    IncrementalEncoder( int boardSize, int padding ) {
+        int cells = boardSize * boardSize;
+        
+        this.boardSize = boardSize;
+        this.padding = padding;
+        this.stack = new int[cells];
+        this.members = new int[cells];
+        this.captured = new int[cells];
+        this.marks = new int[cells];
+        this.libertyMarks = new int[cells];
+    }
+    
+    // The encoding must hold the encoding of the Game before move was played, and game must be the result of playing
+    // it.
+    void update( Tensor encoding, Game game, Move move ) {
+        encoding.swapChannels(PLAYER_STONE.ordinal(), OPPONENT_STONE.ordinal());
+        if (move == PASS) {
+            return;
+        }
+        
+        nextVisit();
+        
+        // The player who made the move is the opponent now.
+        Coordinate coordinate = (Coordinate) move;
+        int played = (coordinate.getRow() - 1) * boardSize + coordinate.getColumn() - 1;
+        setStone(encoding, played, OPPONENT_STONE.ordinal());
+        
+        int capturedCount = removeCaptures(encoding, game, played);
+        
+        // The flood fills overwrite neighbors, so the cells around each seed are collected into adjacent instead.
+        recountLiberties(encoding, played);
+        int count = collectNeighbors(played, adjacent);
+        for (int i = 0; i < count; ++i) {
+            recountLiberties(encoding, adjacent[i]);
+        }
+        
+        for (int i = 0; i < capturedCount; ++i) {
+            count = collectNeighbors(captured[i], adjacent);
+            for (int j = 0; j < count; ++j) {
+                recountLiberties(encoding, adjacent[j]);
+            }
+        }
+    }
+    
+    private void nextVisit() {
+        if (visit == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            visit = 0;
+        }
+        ++visit;
+    }
+    
+    private void setStone( Tensor encoding, int cell, int channel ) {
+        encoding.values[index(encoding, NO_STONE.ordinal(), cell)] = 0.;
+        encoding.values[index(encoding, channel, cell)] = 1.;
+    }
+    
+    private int index( Tensor encoding, int channel, int cell ) {
+        return encoding.index(channel, cell / boardSize + padding, cell % boardSize + padding);
+    }
+    
+    private boolean has( Tensor encoding, int channel, int cell ) {
+        return encoding.values[index(encoding, channel, cell)] != 0.;
+    }
+    
+    private int collectNeighbors( int cell, int[] neighbors ) {
+        int row = cell / boardSize;
+        int column = cell % boardSize;
+        
+        int count = 0;
+        if (row > 0) {
+            neighbors[count++] = cell - boardSize;
+        }
+        if (row < boardSize - 1) {
+            neighbors[count++] = cell + boardSize;
+        }
+        if (column > 0) {
+            neighbors[count++] = cell - 1;
+        }
+        if (column < boardSize - 1) {
+            neighbors[count++] = cell + 1;
+        }
+        return count;
+    }
+    
+    // A group of the new current player's stones that touches the played stone was captured exactly when its stone
+    // there is no longer on the board.
+    private int removeCaptures( Tensor encoding, Game game, int played ) {
+        int playerChannel = PLAYER_STONE.ordinal();
+        Player victim = game.getCurrentPlayer();
+        
+        int capturedCount = 0;
+        int count = collectNeighbors(played, adjacent);
+        for (int i = 0; i < count; ++i) {
+            int candidate = adjacent[i];
+            if (has(encoding, playerChannel, candidate) && marks[candidate] != visit) {
+                Coordinate coordinate = Coordinate.get(candidate % boardSize + 1, candidate / boardSize + 1);
+                if (!game.get(coordinate).equals(victim)) {
+                    int size = fillGroup(encoding, candidate, playerChannel);
+                    for (int j = 0; j < size; ++j) {
+                        int member = members[j];
+                        encoding.values[index(encoding, playerChannel, member)] = 0.;
+                        encoding.values[index(encoding, NO_STONE.ordinal(), member)] = 1.;
+                        clearLiberties(encoding, member);
+                        captured[capturedCount++] = member;
+                    }
+                }
+            }
+        }
+        
+        return capturedCount;
+    }
+    
+    // Collects the group of the channel's stones that contains the cell into members, marking each as visited.
+    private int fillGroup( Tensor encoding, int cell, int channel ) {
+        int size = 0;
+        int top = 0;
+        
+        marks[cell] = visit;
+        stack[top++] = cell;
+        while (top > 0) {
+            int current = stack[--top];
+            members[size++] = current;
+            
+            int count = collectNeighbors(current, neighbors);
+            for (int i = 0; i < count; ++i) {
+                int neighbor = neighbors[i];
+                if (marks[neighbor] != visit && has(encoding, channel, neighbor)) {
+                    marks[neighbor] = visit;
+                    stack[top++] = neighbor;
+                }
+            }
+        }
+        
+        return size;
+    }
+    
+    private void recountLiberties( Tensor encoding, int cell ) {
+        int channel;
+        if (has(encoding, PLAYER_STONE.ordinal(), cell)) {
+            channel = PLAYER_STONE.ordinal();
+        } else if (has(encoding, OPPONENT_STONE.ordinal(), cell)) {
+            channel = OPPONENT_STONE.ordinal();
+        } else {
+            return;
+        }
+        
+        if (marks[cell] == visit) {
+            return;
+        }
+        
+        if (libertyVisit == Integer.MAX_VALUE) {
+            Arrays.fill(libertyMarks, 0);
+            libertyVisit = 0;
+        }
+        ++libertyVisit;
+        
+        int size = fillGroup(encoding, cell, channel);
+        int liberties = 0;
+        for (int i = 0; i < size; ++i) {
+            int count = collectNeighbors(members[i], neighbors);
+            for (int j = 0; j < count; ++j) {
+                int neighbor = neighbors[j];
+                if (libertyMarks[neighbor] != libertyVisit && has(encoding, NO_STONE.ordinal(), neighbor)) {
+                    libertyMarks[neighbor] = libertyVisit;
+                    ++liberties;
+                }
+            }
+        }
+        
+        int libertyChannel = Math.min(FIRST_LIBERTY_CHANNEL + liberties - 1, LAST_LIBERTY_CHANNEL);
+        for (int i = 0; i < size; ++i) {
+            int member = members[i];
+            clearLiberties(encoding, member);
+            encoding.values[index(encoding, libertyChannel, member)] = 1.;
+        }
+    }
+    
+    private void clearLiberties( Tensor encoding, int cell ) {
+        for (int channel = FIRST_LIBERTY_CHANNEL; channel <= LAST_LIBERTY_CHANNEL; ++channel) {
+            encoding.values[index(encoding, channel, cell)] = 0.;
+        }
+    }
+}
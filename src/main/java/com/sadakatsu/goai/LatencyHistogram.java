@@ -0,0 +1,133 @@
+package com.sadakatsu.goai;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// A LatencyHistogram counts durations in nanoseconds into log-linear buckets, as HdrHistogram does: every power of two
+// is split into 32 equal buckets, so any recorded value is known to within about 3% no matter its magnitude, and
+// values below 32ns are counted exactly.  Recording is a handful of atomic increments and never allocates, so any
+// number of threads may record into the same histogram.  Durations beyond about 18 minutes fall into the last bucket.
+public final class LatencyHistogram {
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long maximum;
+        
+        private Snapshot( long[] counts, long count, long sum, long maximum ) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.maximum = maximum;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getTotalNanos() {
+            return sum;
+        }
+        
+        public double getMeanNanos() {
+            return count == 0 ? 0. : (double) sum / count;
+        }
+        
+        public long getMaximumNanos() {
+            return maximum;
+        }
+        
+        // Returns the highest value that is equivalent to the value at the percentile, which lies between 0 and 100.
+        public long getNanosAtPercentile( double percentile ) {
+            if (percentile < 0. || percentile > 100.) {
+                String message = String.format("The percentile must be between 0 and 100, but it was %f.", percentile);
+                throw new IllegalArgumentException(message);
+            }
+            
+            long target = Math.max(1, (long) Math.ceil(percentile / 100. * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length; ++bucket) {
+                seen += counts[bucket];
+                if (seen >= target) {
+                    return Math.min(getUpperBound(bucket), maximum);
+                }
+            }
+            return 0;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(
+                "{ count=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, max=%.1fus }",
+                count,
+                getMeanNanos() / 1e3,
+                getNanosAtPercentile(50.) / 1e3,
+                getNanosAtPercentile(99.) / 1e3,
+                maximum / 1e3
+            );
+        }
+    }
+    
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAXIMUM_MAGNITUDE = 40;
+    private static final int BUCKETS = (MAXIMUM_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    
+    // Values below SUB_BUCKETS have a bucket each.  Above them, a value falls into the bucket given by the position of
+    // its highest bit and its next SUB_BUCKET_BITS bits.
+    static int getBucket( long value ) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        
+        int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAXIMUM_MAGNITUDE);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) Math.min(value >>> shift, 2 * SUB_BUCKETS - 1) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    static long getUpperBound( int bucket ) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong maximum = new AtomicLong();
+    
+    public void record( long nanos ) {
+        counts.incrementAndGet(getBucket(nanos));
+        count.increment();
+        sum.add(nanos);
+        
+        long current = maximum.get();
+        while (nanos > current && !maximum.compareAndSet(current, nanos)) {
+            current = maximum.get();
+        }
+    }
+    
+    // A snapshot taken while other threads record may count some of their values in only some of its totals.
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+            copy[bucket] = counts.get(bucket);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), maximum.get());
+    }
+    
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+            counts.set(bucket, 0);
+        }
+        count.reset();
+        sum.reset();
+        maximum.set(0);
+    }
+}
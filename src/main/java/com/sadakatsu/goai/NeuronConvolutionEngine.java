@@ -0,0 +1,107 @@
+package com.sadakatsu.goai;
+
+import com.sadakatsu.goai.GoAi.Neuron;
+
+// NeuronConvolutionEngine is the straightforward implementation: every Neuron calculates each of its output cells by
+// itself.  A layer is split into tiles of a block of Neurons by a band of output rows, so that even the output layer's
+// four Neurons can keep every worker busy.  Each tile finishes the whole batch before the next Neuron starts.
+final class NeuronConvolutionEngine implements ConvolutionEngine {
+    private static final class LayerJob implements TileScheduler.Tile {
+        Neuron[] neurons;
+        Tensor[] inputs;
+        Tensor[] activations;
+        int[][] orientations;
+        int neuronBlocks;
+        int rowBands;
+        
+        void prepare(
+            Neuron[] neurons,
+            Tensor[] inputs,
+            Tensor[] activations,
+            int[][] orientations,
+            int neuronBlocks,
+            int rowBands
+        ) {
+            this.neurons = neurons;
+            this.inputs = inputs;
+            this.activations = activations;
+            this.orientations = orientations;
+            this.neuronBlocks = neuronBlocks;
+            this.rowBands = rowBands;
+        }
+        
+        void release() {
+            neurons = null;
+            inputs = null;
+            activations = null;
+            orientations = null;
+        }
+        
+        @Override
+        public void run( int tile ) {
+            int block = tile / rowBands;
+            int band = tile % rowBands;
+            int firstNeuron = TileScheduler.split(neurons.length, neuronBlocks, block);
+            int lastNeuron = TileScheduler.split(neurons.length, neuronBlocks, block + 1);
+            
+            for (int channel = firstNeuron; channel < lastNeuron; ++channel) {
+                Neuron convolution = neurons[channel];
+                for (int item = 0; item < inputs.length; ++item) {
+                    Tensor input = inputs[item];
+                    int rows = input.breadth - convolution.width + 1;
+                    int firstRow = TileScheduler.split(rows, rowBands, band);
+                    int lastRow = TileScheduler.split(rows, rowBands, band + 1);
+                    
+                    for (int row = firstRow; row < lastRow; ++row) {
+                        for (int column = 0; column < rows; ++column) {
+                            convolution.calculate(input, row, column, activations[item], channel, orientations[item]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private final Neuron[][] network;
+    private final TileScheduler scheduler;
+    private final ThreadLocal<LayerJob> jobs;
+    
+    NeuronConvolutionEngine( Neuron[][] network, TileScheduler scheduler ) {
+        this.network = network;
+        this.scheduler = scheduler;
+        this.jobs = ThreadLocal.withInitial(LayerJob::new);
+    }
+    
+    @Override
+    public void runLayer(
+        int layer,
+        Tensor[] inputs,
+        Tensor[] activations,
+        int[][] orientations,
+        ConvolutionScratch scratch,
+        boolean parallelize
+    ) {
+        Neuron[] currentLayer = network[layer];
+        LayerJob job = jobs.get();
+        
+        if (parallelize) {
+            int neurons = currentLayer.length;
+            int rows = inputs[0].breadth - currentLayer[0].width + 1;
+            int target = scheduler.getTargetTiles();
+            int rowBands = Math.min(rows, Math.max(1, (target + neurons - 1) / neurons));
+            int neuronBlocks = Math.min(neurons, Math.max(1, (target + rowBands - 1) / rowBands));
+            
+            job.prepare(currentLayer, inputs, activations, orientations, neuronBlocks, rowBands);
+            scheduler.run(neuronBlocks * rowBands, job);
+        } else {
+            job.prepare(currentLayer, inputs, activations, orientations, 1, 1);
+            job.run(0);
+        }
+        
+        job.release();
+    }
+    
+    // The Neurons calculate with their own weights, so there is nothing to refresh.
+    @Override
+    public void refreshWeights() {}
+}
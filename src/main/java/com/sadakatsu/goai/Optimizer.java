@@ -0,0 +1,9 @@
+package com.sadakatsu.goai;
+
+// Selects how a Trainer turns a mini-batch's mean gradient into a change of the weights.  SGD steps against the
+// gradient, smoothed by momentum.  ADAM scales each weight's step by running estimates of its gradient's mean and
+// variance, which copes better with the widely different gradient scales of the network's layers.
+public enum Optimizer {
+    SGD,
+    ADAM;
+}
@@ -0,0 +1,23 @@
+package com.sadakatsu.goai;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// A PositionEvaluator supplies the Evaluations that a SelfPlayGame chooses its moves from.  The previous Evaluation,
+// if it is not null, evaluated the Game before its last Move was played, so an implementation may derive the new
+// Evaluation from it.  The caller still owns previous and releases it itself.
+public interface PositionEvaluator {
+    Evaluation evaluate( Game game, Evaluation previous ) throws Exception;
+    
+    // Evaluates with the GoAi on the calling thread, parallelizing the layers if asked to.  Several games that share a
+    // GoAi should not parallelize their layers, since the GoAi runs only one parallelized evaluation at a time.
+    static PositionEvaluator of( GoAi ai, boolean parallelize ) {
+        if (ai == null) {
+            throw new IllegalArgumentException("The GoAi may not be null.");
+        }
+        
+        return (game, previous) -> previous == null ?
+            ai.evaluate(game, parallelize) :
+            ai.evaluate(game, previous, parallelize);
+    }
+}
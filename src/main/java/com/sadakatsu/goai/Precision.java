@@ -0,0 +1,9 @@
+package com.sadakatsu.goai;
+
+// Selects the floating point precision a GoAi uses for inference.  DOUBLE is exact with respect to the network's
+// weights.  SINGLE stores the weights and the intermediate matrices as floats, which halves the memory traffic of large
+// networks at the cost of rounding.  Use PrecisionComparison to check how much the rounding changes a network's output.
+public enum Precision {
+    DOUBLE,
+    SINGLE;
+}
@@ -0,0 +1,180 @@
+package com.sadakatsu.goai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// PrecisionComparison evaluates the same positions with two IM2COL GoAis that share a seed, and thus share their
+// weights: one using DOUBLE precision as the reference and one using SINGLE precision.  It reports how far the SINGLE
+// precision raw scores stray from the reference's and which positions would be played differently.  Run it against a
+// configuration before trusting SINGLE precision with it, since the rounding error grows with the network's depth and
+// width.
+public final class PrecisionComparison implements AutoCloseable {
+    public static final class Report {
+        private final int positions;
+        private final double maximumDeviation;
+        private final List<Integer> changedRecommendations;
+        
+        private Report( int positions, double maximumDeviation, List<Integer> changedRecommendations ) {
+            this.positions = positions;
+            this.maximumDeviation = maximumDeviation;
+            this.changedRecommendations = Collections.unmodifiableList(changedRecommendations);
+        }
+        
+        public int getPositions() {
+            return positions;
+        }
+        
+        // The largest absolute difference between any raw player or opponent score of the two GoAis.
+        public double getMaximumDeviation() {
+            return maximumDeviation;
+        }
+        
+        // The indices of the positions for which recommendGamePlay() chose a different Move.
+        public List<Integer> getChangedRecommendations() {
+            return changedRecommendations;
+        }
+        
+        public boolean isWithin( double tolerance ) {
+            return maximumDeviation <= tolerance && changedRecommendations.isEmpty();
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(
+                "Report{ positions=%d, maximumDeviation=%g, changedRecommendations=%s }",
+                positions,
+                maximumDeviation,
+                changedRecommendations
+            );
+        }
+    }
+    
+    private static final int BOARD_SIZE = 9;
+    private static final int HIDDEN_LAYERS = 7;
+    private static final int CHANNELS = 64;
+    private static final int POSITIONS = 32;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrecisionComparison.class);
+    
+    private final GoAi reference;
+    private final GoAi candidate;
+    private final ScoreRecommender recommender;
+    
+    // Both GoAis are built from copies of the passed builder, which is left unchanged.  The copies' backend and
+    // precision are overridden so that the GoAis differ only in precision.
+    public PrecisionComparison( GoAi.GoAiBuilder builder, ScoreRecommender recommender ) {
+        if (builder == null) {
+            throw new IllegalArgumentException("The GoAiBuilder may not be null.");
+        }
+        if (recommender == null) {
+            throw new IllegalArgumentException("The ScoreRecommender may not be null.");
+        }
+        
+        this.reference = builder.copy().backend(ConvolutionBackend.IM2COL).precision(Precision.DOUBLE).build();
+        try {
+            this.candidate = builder.copy().backend(ConvolutionBackend.IM2COL).precision(Precision.SINGLE).build();
+        } catch (RuntimeException | Error e) {
+            reference.close();
+            throw e;
+        }
+        this.recommender = recommender;
+    }
+    
+    public GoAi getReference() {
+        return reference;
+    }
+    
+    public GoAi getCandidate() {
+        return candidate;
+    }
+    
+    public Report compare( List<Game> games ) {
+        if (games == null) {
+            throw new IllegalArgumentException("The List of Games may not be null.");
+        }
+        
+        List<Evaluation> expected = reference.evaluateAll(games);
+        List<Evaluation> actual = candidate.evaluateAll(games);
+        
+        double maximumDeviation = 0.;
+        List<Integer> changedRecommendations = new ArrayList<>();
+        for (int i = 0; i < games.size(); ++i) {
+            Evaluation first = expected.get(i);
+            Evaluation second = actual.get(i);
+            
+            // Both Evaluations are of the same Game, so their tables have the same legal moves.
+            ScoreTable firstTable = first.getScoreTable();
+            ScoreTable secondTable = second.getScoreTable();
+            for (int index = 0; index < firstTable.getLegalCount(); ++index) {
+                int slot = firstTable.getLegalSlot(index);
+                maximumDeviation = Math.max(
+                    maximumDeviation,
+                    Math.max(
+                        Math.abs(firstTable.getRawPlayerScore(slot) - secondTable.getRawPlayerScore(slot)),
+                        Math.abs(firstTable.getRawOpponentScore(slot) - secondTable.getRawOpponentScore(slot))
+                    )
+                );
+            }
+            
+            if (!recommendSameMove(first, second)) {
+                changedRecommendations.add(i);
+            }
+            
+            first.release();
+            second.release();
+        }
+        
+        return new Report(games.size(), maximumDeviation, changedRecommendations);
+    }
+    
+    // Stops the threads of both GoAis.
+    @Override
+    public void close() {
+        reference.close();
+        candidate.close();
+    }
+    
+    private boolean recommendSameMove( Evaluation first, Evaluation second ) {
+        Optional<Move> expected = recommender.recommendGamePlay(first).map(Score::getMove);
+        Optional<Move> actual = recommender.recommendGamePlay(second).map(Score::getMove);
+        return expected.equals(actual);
+    }
+    
+    // Plays the opening of a game with the reference GoAi to collect positions, then compares the GoAis on them.  The
+    // optional arguments are the board size, hidden layers, and channels, which default to App's configuration.
+    public static void main( String[] args ) {
+        int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : BOARD_SIZE;
+        int hiddenLayers = args.length > 1 ? Integer.parseInt(args[1]) : HIDDEN_LAYERS;
+        int channels = args.length > 2 ? Integer.parseInt(args[2]) : CHANNELS;
+        
+        ScoreRecommender recommender = new BestRawScoreRecommender();
+        try (
+            PrecisionComparison comparison = new PrecisionComparison(
+                GoAi.newBuilder(boardSize, hiddenLayers, channels).seed(System.nanoTime()),
+                recommender
+            )
+        ) {
+            List<Game> games = new ArrayList<>();
+            Game game = Game.newBuilder(boardSize).build();
+            while (games.size() < POSITIONS && !game.isOver()) {
+                games.add(game);
+                Evaluation evaluation = comparison.getReference().evaluate(game);
+                game = game.play(recommender.recommendGamePlay(evaluation).get().getMove());
+                evaluation.release();
+            }
+            
+            Report report = comparison.compare(games);
+            long seed = comparison.getReference().getSeed();
+            LOGGER.info("Comparing seed {} at {}x{}: {}", seed, boardSize, boardSize, report);
+        }
+    }
+}
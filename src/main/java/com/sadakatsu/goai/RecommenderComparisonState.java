@@ -1,10 +1,15 @@
 package com.sadakatsu.goai;
 
+import java.util.Set;
+
 import com.sadakatsu.goai.GoAi.Evaluation;
 
 public class RecommenderComparisonState {
     private final Evaluation evaluation;
-
+    
+    // ScoreRecommender remembers the best Scores here once it has selected them.
+    private Set<Score> bestScores;
+    
     public RecommenderComparisonState( Evaluation evaluation ) {
         validateEvaluation(evaluation);
         this.evaluation = evaluation;
@@ -19,4 +24,12 @@ public class RecommenderComparisonState {
     public Evaluation getEvaluation() {
         return evaluation;
     }
+    
+    Set<Score> getBestScores() {
+        return bestScores;
+    }
+    
+    void setBestScores( Set<Score> bestScores ) {
+        this.bestScores = bestScores;
+    }
 }
\ No newline at end of file
@@ -24,7 +24,7 @@ public class Score {
         }
     }
     
-    private static double convertToReadable( double rawScore ) {
+    static double convertToReadable( double rawScore ) {
         double scaled = rawScore * SCALE;
         double floor = Math.floor(scaled);
         double remainder = scaled - floor;
@@ -128,14 +128,14 @@ public class Score {
     // FLOPs the neural network that ultimately generates these values performs.  The best heuristic I can devise is
     // that two numbers should be considered equivalent if they are closer to each other than at least one of them is
     // to the value to which it is rounded.
-    private boolean areEquivalent( double a, double b ) {
+    static boolean areEquivalent( double a, double b ) {
         double distanceBetweenScores = Math.abs(a - b);
         double distanceFromAToRounded = distanceFromRoundedValue(a);
         double distanceFromBToRounded = distanceFromRoundedValue(b);
         return distanceBetweenScores < distanceFromAToRounded || distanceBetweenScores < distanceFromBToRounded;
     }
     
-    private double distanceFromRoundedValue( double value ) {
+    private static double distanceFromRoundedValue( double value ) {
         double readable = convertToReadable(value);
         double tidyRaw = convertToRaw(readable);
         return Math.abs(value - tidyRaw);
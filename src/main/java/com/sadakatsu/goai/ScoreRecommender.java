@@ -2,9 +2,7 @@ package com.sadakatsu.goai;
 
 import static com.sadakatsu.go.domain.Pass.PASS;
 
-import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -27,8 +25,8 @@ public abstract class ScoreRecommender {
     
     public Set<Score> recommendEquivalentGamePlays( Evaluation evaluation ) {
         validateEvaluation(evaluation);
-        RecommenderComparisonState state = buildComparisonState(evaluation);
-        return recommendScores(state);
+        RecommenderComparisonState state = getComparisonState(evaluation);
+        return new HashSet<>(recommendScores(state));
     }
     
     private void validateEvaluation( Evaluation evaluation ) {
@@ -39,38 +37,90 @@ public abstract class ScoreRecommender {
     
     protected abstract RecommenderComparisonState buildComparisonState( Evaluation evaluation );
     
+    // The state is built once per Evaluation and kept on it, so every recommendation asked of this ScoreRecommender for
+    // the same Evaluation shares the same selection of the best Scores.
+    private RecommenderComparisonState getComparisonState( Evaluation evaluation ) {
+        RecommenderComparisonState state = evaluation.getComparisonState(this);
+        if (state == null) {
+            state = buildComparisonState(evaluation);
+            evaluation.setComparisonState(this, state);
+        }
+        return state;
+    }
+    
+    // The returned Set is shared by every call for the same Evaluation, so it must not be modified.
     private Set<Score> recommendScores( RecommenderComparisonState state ) {
-        Set<Score> best = new HashSet<>();
+        Set<Score> best = state.getBestScores();
+        if (best == null) {
+            best = selectBestScores(state);
+            state.setBestScores(best);
+        }
+        return best;
+    }
+    
+    // The moves that no other move beats are gathered as slots of the Evaluation's ScoreTable, and Scores are only
+    // created for the moves gathered at the end.  When the Relationship is transitive, the gathered moves are all
+    // equivalent, so each candidate only needs to be compared to the first of them: the selection is a single pass
+    // with one comparison per move.  Otherwise, a candidate must be compared to each gathered move in turn, removing
+    // those it beats, until one beats it.
+    private Set<Score> selectBestScores( RecommenderComparisonState state ) {
+        ScoreTable table = state.getEvaluation().getScoreTable();
+        boolean transitive = isRelationshipTransitive();
         
-        Evaluation evaluation = state.getEvaluation();
-        Collection<Score> scores = evaluation.getScores();
-        for (Score candidate : scores) {
+        int[] best = new int[table.getLegalCount()];
+        int count = 0;
+        for (int index = 0; index < best.length; ++index) {
+            int candidate = table.getLegalSlot(index);
             boolean keep = true;
             
-            Iterator<Score> iterator = best.iterator();
-            while (keep && iterator.hasNext()) {
-                Score opponent = iterator.next();
-                Relationship relationship = compareScores(candidate, opponent, state);
-                if (relationship == Relationship.SECOND_IS_BETTER_THAN_FIRST) {
-                    keep = false;
-                } else if (relationship == Relationship.FIRST_IS_BETTER_THAN_SECOND) {
-                    iterator.remove();
+            if (transitive) {
+                if (count > 0) {
+                    Relationship relationship = compareScores(table, candidate, best[0], state);
+                    if (relationship == Relationship.SECOND_IS_BETTER_THAN_FIRST) {
+                        keep = false;
+                    } else if (relationship == Relationship.FIRST_IS_BETTER_THAN_SECOND) {
+                        count = 0;
+                    }
                 }
+            } else {
+                int kept = 0;
+                for (int member = 0; member < count; ++member) {
+                    Relationship relationship = Relationship.SECOND_IS_BETTER_THAN_FIRST;
+                    if (keep) {
+                        relationship = compareScores(table, candidate, best[member], state);
+                        keep = relationship != Relationship.SECOND_IS_BETTER_THAN_FIRST;
+                    }
+                    if (relationship != Relationship.FIRST_IS_BETTER_THAN_SECOND) {
+                        best[kept++] = best[member];
+                    }
+                }
+                count = kept;
             }
             
             if (keep) {
-                best.add(candidate);
+                best[count++] = candidate;
             }
         }
         
-        return best;
+        Set<Score> selected = new HashSet<>();
+        for (int i = 0; i < count; ++i) {
+            selected.add(table.getScore(best[i]));
+        }
+        return selected;
+    }
+    
+    // A ScoreRecommender whose compareScores() is transitive, so that a Score equivalent to one Score is better than,
+    // equivalent to, or worse than everything that Score is, should return true so that selecting the best Scores
+    // takes a single comparison per Score.
+    protected boolean isRelationshipTransitive() {
+        return false;
     }
     
     public Optional<Score> recommendGamePlay( Evaluation evaluation ) {
         Optional<Score> best = Optional.empty();
         
         validateEvaluation(evaluation);
-        RecommenderComparisonState state = buildComparisonState(evaluation);
+        RecommenderComparisonState state = getComparisonState(evaluation);
         Set<Score> scores = recommendScores(state);
         for (Score score : scores) {
             if (!best.isPresent() || doesFirstLoseTie(best.get(), score, state)) {
@@ -85,7 +135,7 @@ public abstract class ScoreRecommender {
         validateEvaluation(evaluation);
         validateScore(noWorseThan);
         
-        RecommenderComparisonState state = buildComparisonState(evaluation);
+        RecommenderComparisonState state = getComparisonState(evaluation);
         return getResolutionPlaySet(state, noWorseThan);
     }
     
@@ -130,7 +180,7 @@ public abstract class ScoreRecommender {
         validateEvaluation(evaluation);
         validateScore(noWorseThan);
         
-        RecommenderComparisonState state = buildComparisonState(evaluation);
+        RecommenderComparisonState state = getComparisonState(evaluation);
         Set<Score> resolutions = getResolutionPlaySet(state, noWorseThan);
         Stream<Score> stream = resolutions.stream();
         return stream.reduce((first, second) -> doesFirstLoseTie(first, second, state) ? second : first);
@@ -140,9 +190,11 @@ public abstract class ScoreRecommender {
         return recommendResolutionPlay(evaluation, AVOID_PASSING);
     }
     
+    // Compares the moves in two slots of the table.
     protected abstract Relationship compareScores(
-        Score first,
-        Score second,
+        ScoreTable table,
+        int first,
+        int second,
         RecommenderComparisonState state
     );
     
@@ -0,0 +1,177 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Move;
+
+// A ScoreTable is a primitive view of an Evaluation's Scores.  Every point of the board has a slot, numbered row by row
+// from the upper left corner, and the pass has the slot after them.  The raw and readable scores of every legal move
+// are read out of the network's output once, into parallel arrays indexed by slot, so a ScoreRecommender can rank the
+// moves without creating a Score for each of them.  A Score is only created when one is asked for, and is then kept.
+//
+// Each Evaluation owns one ScoreTable and refills it for every Game it evaluates, so a ScoreTable must not be used
+// after its Evaluation is released.
+public final class ScoreTable {
+    private final int boardSize;
+    private final int passSlot;
+    private final double[] rawPlayerScores;
+    private final double[] rawOpponentScores;
+    private final double[] readablePlayerScores;
+    private final double[] readableOpponentScores;
+    private final boolean[] legal;
+    private final Score[] scores;
+    
+    // The legal moves' slots, in the order in which the Game listed the moves.
+    private final int[] legalSlots;
+    private int legalCount;
+    
+    ScoreTable( int boardSize ) {
+        int slots = boardSize * boardSize + 1;
+        
+        this.boardSize = boardSize;
+        this.passSlot = slots - 1;
+        this.rawPlayerScores = new double[slots];
+        this.rawOpponentScores = new double[slots];
+        this.readablePlayerScores = new double[slots];
+        this.readableOpponentScores = new double[slots];
+        this.legal = new boolean[slots];
+        this.scores = new Score[slots];
+        this.legalSlots = new int[slots];
+    }
+    
+    // The output layer holds the player's and opponent's play values in its first two channels, and the pass values
+    // in the first cell of the last two.
+    void fill( Set<Move> legalMoves, Tensor output ) {
+        Arrays.fill(legal, false);
+        Arrays.fill(scores, null);
+        legalCount = 0;
+        
+        for (Move move : legalMoves) {
+            int slot = getSlot(move);
+            int index = move == PASS ? output.index(2, 0, 0) : output.index(0, slot / boardSize, slot % boardSize);
+            double rawPlayerScore = output.values[index];
+            double rawOpponentScore = output.values[index + output.channelStride];
+            
+            rawPlayerScores[slot] = rawPlayerScore;
+            rawOpponentScores[slot] = rawOpponentScore;
+            readablePlayerScores[slot] = Score.convertToReadable(rawPlayerScore);
+            readableOpponentScores[slot] = Score.convertToReadable(rawOpponentScore);
+            legal[slot] = true;
+            legalSlots[legalCount++] = slot;
+        }
+    }
+    
+    public int getSlotCount() {
+        return passSlot + 1;
+    }
+    
+    public int getPassSlot() {
+        return passSlot;
+    }
+    
+    public int getSlot( Move move ) {
+        if (move == null) {
+            throw new IllegalArgumentException("The Move may not be null.");
+        }
+        
+        int slot = passSlot;
+        if (move != PASS) {
+            Coordinate coordinate = (Coordinate) move;
+            slot = (coordinate.getRow() - 1) * boardSize + coordinate.getColumn() - 1;
+        }
+        return slot;
+    }
+    
+    public Move getMove( int slot ) {
+        validateSlot(slot);
+        
+        Move move = PASS;
+        if (slot != passSlot) {
+            move = Coordinate.get(slot % boardSize + 1, slot / boardSize + 1);
+        }
+        return move;
+    }
+    
+    private void validateSlot( int slot ) {
+        if (slot < 0 || slot > passSlot) {
+            String message = String.format("The slot must be between 0 and %d, but it was %d.", passSlot, slot);
+            throw new IllegalArgumentException(message);
+        }
+    }
+    
+    public boolean isPass( int slot ) {
+        return slot == passSlot;
+    }
+    
+    public boolean isLegal( int slot ) {
+        validateSlot(slot);
+        return legal[slot];
+    }
+    
+    public int getLegalCount() {
+        return legalCount;
+    }
+    
+    // Returns the slot of the index-th legal move.
+    public int getLegalSlot( int index ) {
+        if (index < 0 || index >= legalCount) {
+            String message = String.format(
+                "The index must be between 0 and %d, but it was %d.",
+                legalCount - 1,
+                index
+            );
+            throw new IllegalArgumentException(message);
+        }
+        return legalSlots[index];
+    }
+    
+    // The scores of an illegal move's slot are meaningless.
+    public double getRawPlayerScore( int slot ) {
+        return rawPlayerScores[slot];
+    }
+    
+    public double getRawOpponentScore( int slot ) {
+        return rawOpponentScores[slot];
+    }
+    
+    public double getReadablePlayerScore( int slot ) {
+        return readablePlayerScores[slot];
+    }
+    
+    public double getReadableOpponentScore( int slot ) {
+        return readableOpponentScores[slot];
+    }
+    
+    public double getRawResult( int slot ) {
+        return rawPlayerScores[slot] - rawOpponentScores[slot];
+    }
+    
+    public double getReadableResult( int slot ) {
+        return readablePlayerScores[slot] - readableOpponentScores[slot];
+    }
+    
+    // This matches Score.isOutcomeSimilarTo().
+    public boolean isOutcomeSimilar( int first, int second ) {
+        return
+            Score.areEquivalent(rawPlayerScores[first], rawPlayerScores[second]) &&
+            Score.areEquivalent(rawOpponentScores[first], rawOpponentScores[second]);
+    }
+    
+    public Score getScore( int slot ) {
+        if (!isLegal(slot)) {
+            String message = String.format("%s is not a legal move for the evaluated Game.", getMove(slot));
+            throw new IllegalArgumentException(message);
+        }
+        
+        Score score = scores[slot];
+        if (score == null) {
+            score = Score.createFromRawScores(getMove(slot), rawPlayerScores[slot], rawOpponentScores[slot]);
+            scores[slot] = score;
+        }
+        return score;
+    }
+}
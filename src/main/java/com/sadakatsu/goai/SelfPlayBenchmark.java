@@ -0,0 +1,72 @@
+package com.sadakatsu.goai;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// SelfPlayBenchmark plays the same number of games twice through an EvaluationBroker: once on a fixed pool of platform
+// threads, whose size bounds how many positions can wait for a batch, and once with a virtual thread for each game, so
+// that every game in flight can wait for a batch at once.  Each run gets a new GoAi with the same seed and no
+// EvaluationCache, so neither run benefits from the other's evaluations.  The games are written to a temporary
+// directory.
+public final class SelfPlayBenchmark {
+    private static final int BOARD_SIZE = 9;
+    private static final int HIDDEN_LAYERS = 7;
+    private static final int CHANNELS = 64;
+    private static final int GAMES = 256;
+    private static final int BATCH_SIZE = 64;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelfPlayBenchmark.class);
+    
+    // The optional arguments are the number of games, the platform pool's size, the virtual threads' games in flight,
+    // and the broker's maximum batch size.
+    public static void main( String[] args ) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : GAMES;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int gamesInFlight = args.length > 2 ? Integer.parseInt(args[2]) : games;
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : BATCH_SIZE;
+        long seed = System.nanoTime();
+        
+        if (!VirtualThreads.isAvailable()) {
+            LOGGER.warn("Virtual threads are unavailable, so each game will run on its own platform thread instead.");
+        }
+        
+        Path directory = Files.createTempDirectory("goai-self-play-benchmark");
+        run("Platform threads", seed, games, batchSize, directory, false, workers, workers);
+        run("Virtual threads", seed, games, batchSize, directory, true, workers, gamesInFlight);
+    }
+    
+    private static void run(
+        String label,
+        long seed,
+        int games,
+        int batchSize,
+        Path directory,
+        boolean virtualThreads,
+        int workers,
+        int gamesInFlight
+    ) throws Exception {
+        try (
+            GoAi ai = GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).seed(seed).build();
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai).maximumBatchSize(batchSize).build()
+        ) {
+            SelfPlayFarm farm = SelfPlayFarm.newBuilder(broker, BOARD_SIZE)
+                .workers(workers)
+                .gamesInFlight(gamesInFlight)
+                .virtualThreads(virtualThreads)
+                .directory(directory)
+                .build();
+            SelfPlayFarm.Report report = farm.run(games);
+            
+            LOGGER.info(
+                "{} with {} games in flight: {}, average batch size {}",
+                label,
+                virtualThreads ? gamesInFlight : workers,
+                report,
+                String.format("%.2f", broker.getAverageBatchSize())
+            );
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.sadakatsu.goai;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.sgf.Sgf;
+
+// SelfPlayFarm plays many independent self-play games at once.  Each game is played out by a SelfPlayGame on one of a
+// fixed pool of worker threads, and is written to its own SGF as soon as it is scored, so a long run leaves every
+// finished game behind even if it is interrupted.  Every worker has its own ScoreRecommender, since recommenders may
+// keep state between calls, but all the games share the farm's PositionEvaluator.
+//
+// The games-in-flight limit bounds how many games have been started but not finished.  A game holds its worker for its
+// whole length, since a PositionEvaluator blocks its caller, so the games in flight beyond the workers wait for one.
+// Sharing an EvaluationBroker rather than the GoAi itself lets the workers' positions be evaluated in batches.
+//
+// A farm that uses virtual threads has no fixed pool: every game runs on its own virtual thread, so all the games in
+// flight are played at once and thousands of them can keep an EvaluationBroker's batches full.  The games then need
+// an evaluator that does its work on other threads, like an EvaluationBroker, since the virtual threads only share as
+// many platform threads as there are processors.
+public final class SelfPlayFarm {
+    public static final class SelfPlayFarmBuilder {
+        private final PositionEvaluator evaluator;
+        private final int boardSize;
+        private int workers;
+        private int gamesInFlight;
+        private boolean virtualThreads;
+        private Supplier<ScoreRecommender> recommenders;
+        private Path directory;
+        
+        private SelfPlayFarmBuilder( PositionEvaluator evaluator, int boardSize ) {
+            this.evaluator = evaluator;
+            this.boardSize = boardSize;
+            this.workers = Runtime.getRuntime().availableProcessors();
+            this.recommenders = BestRawScoreRecommender::new;
+            this.directory = Paths.get("./sgfs");
+        }
+        
+        public SelfPlayFarmBuilder workers( int workers ) {
+            if (workers < 1) {
+                String message = String.format("The number of workers must be at least 1, but it was %d.", workers);
+                throw new IllegalArgumentException(message);
+            }
+            this.workers = workers;
+            return this;
+        }
+        
+        // The limit defaults to the number of workers.
+        public SelfPlayFarmBuilder gamesInFlight( int gamesInFlight ) {
+            if (gamesInFlight < 1) {
+                String message = String.format(
+                    "The games in flight must be at least 1, but it was %d.",
+                    gamesInFlight
+                );
+                throw new IllegalArgumentException(message);
+            }
+            this.gamesInFlight = gamesInFlight;
+            return this;
+        }
+        
+        // The number of workers is ignored when using virtual threads.  Platform threads, one for each game, stand in
+        // for them on JVMs older than Java 21.
+        public SelfPlayFarmBuilder virtualThreads( boolean virtualThreads ) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+        
+        // The Supplier is called once by each worker thread, the first time it plays a game, and so once for each game
+        // when using virtual threads.
+        public SelfPlayFarmBuilder recommenders( Supplier<ScoreRecommender> recommenders ) {
+            if (recommenders == null) {
+                throw new IllegalArgumentException("The Supplier of ScoreRecommenders may not be null.");
+            }
+            this.recommenders = recommenders;
+            return this;
+        }
+        
+        public SelfPlayFarmBuilder directory( Path directory ) {
+            if (directory == null) {
+                throw new IllegalArgumentException("The directory may not be null.");
+            }
+            this.directory = directory;
+            return this;
+        }
+        
+        public SelfPlayFarm build() {
+            return new SelfPlayFarm(this);
+        }
+    }
+    
+    public static final class Report {
+        private final int games;
+        private final int failures;
+        private final long moves;
+        private final long elapsedNanos;
+        
+        private Report( int games, int failures, long moves, long elapsedNanos ) {
+            this.games = games;
+            this.failures = failures;
+            this.moves = moves;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        // The number of games that were finished and written.
+        public int getGames() {
+            return games;
+        }
+        
+        public int getFailures() {
+            return failures;
+        }
+        
+        // The moves of the finished games, not counting the dead stone searches' moves.
+        public long getMoves() {
+            return moves;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        public double getGamesPerHour() {
+            return elapsedNanos == 0 ? 0. : games * 3.6e12 / elapsedNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(
+                "Report{ games=%d, failures=%d, moves=%d, elapsed=%.1fs, gamesPerHour=%.1f }",
+                games,
+                failures,
+                moves,
+                elapsedNanos / 1e9,
+                getGamesPerHour()
+            );
+        }
+    }
+    
+    private static final int BOARD_SIZE = 9;
+    private static final int HIDDEN_LAYERS = 7;
+    private static final int CHANNELS = 64;
+    private static final int GAMES = 16;
+    private static final long CACHE_BUDGET = 256L << 20;
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelfPlayFarm.class);
+    
+    public static SelfPlayFarmBuilder newBuilder( GoAi ai ) {
+        if (ai == null) {
+            throw new IllegalArgumentException("The GoAi may not be null.");
+        }
+        return newBuilder(PositionEvaluator.of(ai, false), ai.getBoardSize());
+    }
+    
+    public static SelfPlayFarmBuilder newBuilder( PositionEvaluator evaluator, int boardSize ) {
+        if (evaluator == null) {
+            throw new IllegalArgumentException("The PositionEvaluator may not be null.");
+        }
+        if (boardSize < 1) {
+            String message = String.format("The board size must be at least 1, but it was %d.", boardSize);
+            throw new IllegalArgumentException(message);
+        }
+        return new SelfPlayFarmBuilder(evaluator, boardSize);
+    }
+    
+    private final PositionEvaluator evaluator;
+    private final int boardSize;
+    private final int workers;
+    private final int gamesInFlight;
+    private final boolean virtualThreads;
+    private final Supplier<ScoreRecommender> recommenders;
+    private final Path directory;
+    
+    // Tells the SGFs of the games that finish in the same millisecond apart.
+    private final AtomicLong written = new AtomicLong();
+    
+    private SelfPlayFarm( SelfPlayFarmBuilder builder ) {
+        this.evaluator = builder.evaluator;
+        this.boardSize = builder.boardSize;
+        this.workers = builder.workers;
+        this.gamesInFlight = builder.gamesInFlight > 0 ? builder.gamesInFlight : builder.workers;
+        this.virtualThreads = builder.virtualThreads;
+        this.recommenders = builder.recommenders;
+        this.directory = builder.directory;
+    }
+    
+    public int getWorkers() {
+        return workers;
+    }
+    
+    public int getGamesInFlight() {
+        return gamesInFlight;
+    }
+    
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    // Plays the games and returns once all of them have finished.  A game that fails is logged and counted, and does
+    // not stop the others.
+    public Report run( int games ) throws Exception {
+        if (games < 0) {
+            String message = String.format("The number of games may not be negative, but it was %d.", games);
+            throw new IllegalArgumentException(message);
+        }
+        
+        Files.createDirectories(directory);
+        
+        ThreadLocal<ScoreRecommender> recommender = ThreadLocal.withInitial(recommenders);
+        ExecutorService pool = createPool();
+        
+        Semaphore inFlight = new Semaphore(gamesInFlight);
+        CountDownLatch finished = new CountDownLatch(games);
+        AtomicInteger played = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicLong moves = new AtomicLong();
+        
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < games; ++i) {
+                int index = i;
+                inFlight.acquire();
+                pool.execute(() -> {
+                    try {
+                        Game game = playGame(recommender.get());
+                        write(game);
+                        played.incrementAndGet();
+                        moves.addAndGet(game.getMovesPlayed());
+                        LOGGER.info("Finished self-play game {} after {} moves.", index, game.getMovesPlayed());
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        LOGGER.error("Self-play game {} failed.", index, e);
+                    } finally {
+                        inFlight.release();
+                        finished.countDown();
+                    }
+                });
+            }
+            finished.await();
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        return new Report(played.get(), failures.get(), moves.get(), System.nanoTime() - start);
+    }
+    
+    private ExecutorService createPool() {
+        if (virtualThreads) {
+            return VirtualThreads.newThreadPerTaskExecutor("goai-self-play-");
+        }
+        
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, (runnable) -> {
+            Thread thread = new Thread(runnable, String.format("goai-self-play-%d", threads.getAndIncrement()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    private Game playGame( ScoreRecommender recommender ) throws Exception {
+        SelfPlayGame game = new SelfPlayGame(evaluator, recommender, false);
+        return game.play(Game.newBuilder(boardSize).build());
+    }
+    
+    private void write( Game game ) throws Exception {
+        String filename = String.format(
+            "%s-%d.sgf",
+            DateTimeFormat.forPattern("yyyy-MM-dd-HH-mm-ss-SSS").print(DateTime.now()),
+            written.getAndIncrement()
+        );
+        File file = directory.resolve(filename).toFile();
+        Sgf.writeToFile(game, file);
+    }
+    
+    // Plays games with one GoAi shared by every worker through an EvaluationBroker, which batches the positions of up
+    // to one game per worker.  The optional arguments are the number of games, the number of workers, and the
+    // games-in-flight limit.  The GoAi's metrics can be watched through JMX, and are logged at the end when the
+    // "goai.metrics" system property is "true".
+    public static void main( String[] args ) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : GAMES;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int gamesInFlight = args.length > 2 ? Integer.parseInt(args[2]) : workers;
+        
+        try (
+            GoAi ai = GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).cacheBudget(CACHE_BUDGET).build();
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai).maximumBatchSize(workers).build()
+        ) {
+            ai.getMetrics().registerMBean("self-play");
+            SelfPlayFarm farm = newBuilder(broker, BOARD_SIZE).workers(workers).gamesInFlight(gamesInFlight).build();
+            Report report = farm.run(games);
+            
+            LOGGER.info(
+                "Self-play with seed {}, {} workers and {} games in flight: {}",
+                ai.getSeed(),
+                workers,
+                gamesInFlight,
+                report
+            );
+            LOGGER.info("{}", broker);
+            LOGGER.info("{}", ai.getCache().map(Object::toString).orElse("The EvaluationCache was disabled."));
+            if (ai.getMetrics().isEnabled()) {
+                LOGGER.info("{}", ai.getMetrics().snapshot());
+            }
+        }
+    }
+}
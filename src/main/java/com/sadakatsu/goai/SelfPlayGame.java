@@ -0,0 +1,232 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Group;
+import com.sadakatsu.go.domain.intersection.Intersection;
+import com.sadakatsu.go.domain.intersection.Player;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+// SelfPlayGame plays a Game out to its final score: the play phase until both sides pass, then the dead stone search
+// that decides which groups are removed, resuming play whenever that search contradicts itself.  The Evaluations come
+// from a PositionEvaluator and the moves from a ScoreRecommender, which may keep state between calls, so a
+// SelfPlayGame must only be used by one thread at a time.  A quiet SelfPlayGame logs nothing, which keeps the logs of
+// many concurrent games readable.
+final class SelfPlayGame {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelfPlayGame.class);
+    
+    private final PositionEvaluator evaluator;
+    private final ScoreRecommender recommender;
+    private final boolean verbose;
+    
+    SelfPlayGame( PositionEvaluator evaluator, ScoreRecommender recommender, boolean verbose ) {
+        if (evaluator == null) {
+            throw new IllegalArgumentException("The PositionEvaluator may not be null.");
+        }
+        if (recommender == null) {
+            throw new IllegalArgumentException("The ScoreRecommender may not be null.");
+        }
+        
+        this.evaluator = evaluator;
+        this.recommender = recommender;
+        this.verbose = verbose;
+    }
+    
+    Game play( Game game ) throws Exception {
+        if (game == null) {
+            throw new IllegalArgumentException("The Game may not be null.");
+        }
+        
+        boolean avoidPassing = false;
+        do {
+            Evaluation results = null;
+            
+            // Play out the game until both sides want to pass.
+            while (!game.isOver()) {
+                if (verbose) {
+                    LOGGER.info("Game's current state:\n\n{}", game);
+                }
+                
+                // Every position after the first follows the previous one by a single move, so its encoding can be
+                // derived from the previous Evaluation's.
+                Evaluation previous = results;
+                results = evaluator.evaluate(game, previous);
+                if (previous != null) {
+                    previous.release();
+                }
+                
+                Score selectedMove;
+                if (avoidPassing) {
+                    selectedMove = recommender.recommendGamePlayAvoidingPass(results).get();
+                } else {
+                    selectedMove = recommender.recommendGamePlay(results).get();
+                }
+                
+                if (verbose) {
+                    LOGGER.info("Game evaluation:\n\n{}", representEvaluation(results, selectedMove, false));
+                }
+                game = game.play(selectedMove.getMove());
+                if (avoidPassing && selectedMove.getMove() != PASS) {
+                    avoidPassing = false;
+                }
+            }
+            
+            // Play out all moves that do not in the players' opinions change the result until no such further moves are
+            // found.  All groups that have all their stones left on the board in this playout are alive; all that have
+            // been captured are dead.  If there are any groups that have lost only a subset of their stones, we have a
+            // conflict that will require more play to resolve.
+            if (verbose) {
+                LOGGER.info("Game's state before dead stone search:\n\n{}", game);
+            }
+            Game resolution = game.resume();
+            
+            // TODO: This method of setting the minimum acceptable bar for playing moves assumes that the AI correctly
+            // evaluates the pass's score, then reuses that score.  Depending upon how training goes, I may need to make
+            // this playout check the pass score for every move.
+            Score lastPass = results.getScoreFor(PASS);
+            results.release();
+            Map<Player, Score> noWorseThan = new HashMap<>();
+            noWorseThan.put(resolution.getCurrentPlayer(), lastPass);
+            noWorseThan.put(resolution.getCurrentPlayer().getOpposite(), lastPass.invert());
+            
+            while (!resolution.isOver()) {
+                if (verbose) {
+                    LOGGER.info("Game dead stone search state:\n\n{}\n", indent(resolution));
+                }
+                Evaluation evaluation = evaluator.evaluate(resolution, null);
+                Score selected = recommender.recommendResolutionPlay(
+                    evaluation,
+                    noWorseThan.get(resolution.getCurrentPlayer())
+                ).get();
+                if (verbose) {
+                    LOGGER.info("Dead stone search evaluation:\n\n{}", representEvaluation(evaluation, selected, true));
+                }
+                evaluation.release();
+                resolution = resolution.play(selected.getMove());
+            }
+            
+            boolean contradiction = false;
+            Set<Group> deadGroups = new HashSet<>();
+            for (Group group : game.getGroupsOfStones()) {
+                Boolean isDead = null;
+                Intersection expected = group.type;
+                for (Coordinate coordinate : group.members) {
+                    Intersection actual = resolution.get(coordinate);
+                    boolean flagAsDead = !expected.equals(actual);
+                    if (isDead == null) {
+                        isDead = flagAsDead;
+                    } else if (isDead != flagAsDead) {
+                        contradiction = true;
+                        break;
+                    }
+                }
+                if (contradiction) {
+                    break;
+                } else if (isDead) {
+                    deadGroups.add(group);
+                }
+            }
+            
+            if (contradiction) {
+                if (verbose) {
+                    LOGGER.info("The dead stone search resulted in a contradiction; resumed play is now forced.");
+                }
+                game = game.resume();
+                avoidPassing = true;
+            } else {
+                game = game.score(deadGroups);
+                if (verbose) {
+                    LOGGER.info("Game's final state:\n\n{}", game);
+                }
+            }
+        } while (!game.isOver());
+        
+        return game;
+    }
+    
+    private static String representEvaluation( Evaluation calculations, Score selected, boolean indent ) {
+        StringBuilder builder = new StringBuilder();
+        
+        ScoreTable table = calculations.getScoreTable();
+        int boardSize = calculations.getGame().getDimension();
+        int selectedSlot = table.getSlot(selected.getMove());
+        double selectedResult = table.getReadableResult(selectedSlot);
+        
+        for (int row = 0; row < boardSize; ++row) {
+            if (indent) {
+                builder.append("\t");
+            }
+            
+            for (int column = 0; column < boardSize; ++column) {
+                if (column > 0) {
+                    builder.append(" ");
+                }
+                
+                int slot = row * boardSize + column;
+                builder.append(representScore(table, slot, selectedSlot, selectedResult));
+            }
+            builder.append("\n");
+        }
+        
+        if (indent) {
+            builder.append("\t");
+        }
+        
+        builder.append("PASS:       ");
+        builder.append(representScore(table, table.getPassSlot(), selectedSlot, selectedResult));
+        builder.append("\n");
+        
+        return builder.toString();
+    }
+    
+    private static String representScore( ScoreTable table, int slot, int selectedSlot, double selectedResult ) {
+        String representation = "___________";
+        
+        if (table.isLegal(slot)) {
+            String equivalentPrefix = " ";
+            String equivalentSuffix = " ";
+            String selectedPrefix = " ";
+            String selectedSuffix = " ";
+            
+            double result = table.getReadableResult(slot);
+            if (slot == selectedSlot) {
+                selectedPrefix = "<";
+                selectedSuffix = ">";
+            }
+            if (result == selectedResult) {
+                equivalentPrefix = "<";
+                equivalentSuffix = ">";
+            }
+            
+            representation = String.format(
+                "%s%s%+7.2f%s%s",
+                selectedPrefix,
+                equivalentPrefix,
+                result,
+                equivalentSuffix,
+                selectedSuffix
+            );
+        }
+        
+        return representation;
+    }
+    
+    private static String indent( Game game ) {
+        String representation = game.toString();
+        String[] lines = representation.split("[\\s&&[^ ]]+");
+        for (int i = 0; i < lines.length; ++i) {
+            lines[i] = "\t" + lines[i];
+        }
+        return String.join("\n", lines);
+    }
+}
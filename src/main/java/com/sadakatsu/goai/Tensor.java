@@ -0,0 +1,68 @@
+package com.sadakatsu.goai;
+
+import java.util.Arrays;
+
+// A Tensor stores a stack of square channels in a single contiguous array in channel-major, then row-major order.  The
+// neural network's inner loops walk this array with strides instead of chasing row pointers through jagged arrays,
+// which keeps the data they touch together in cache and gives the JIT simple linear loops to unroll.
+final class Tensor {
+    final int breadth;
+    final int channels;
+    final int channelStride;
+    final double[] values;
+    
+    Tensor( int channels, int breadth ) {
+        validate(channels, "channels");
+        validate(breadth, "breadth");
+        
+        this.breadth = breadth;
+        this.channels = channels;
+        this.channelStride = breadth * breadth;
+        this.values = new double[channels * channelStride];
+    }
+    
+    private void validate( int value, String label ) {
+        if (value < 1) {
+            String message = String.format("'%s' is not allowed to be less than 1, but was %d.", label, value);
+            throw new IllegalArgumentException(message);
+        }
+    }
+    
+    int index( int channel, int row, int column ) {
+        return channel * channelStride + row * breadth + column;
+    }
+    
+    double get( int channel, int row, int column ) {
+        return values[index(channel, row, column)];
+    }
+    
+    void set( int channel, int row, int column, double value ) {
+        values[index(channel, row, column)] = value;
+    }
+    
+    void clear() {
+        Arrays.fill(values, 0.);
+    }
+    
+    void clearChannel( int channel ) {
+        int start = channel * channelStride;
+        Arrays.fill(values, start, start + channelStride, 0.);
+    }
+    
+    void copyChannel( int source, int target ) {
+        System.arraycopy(values, source * channelStride, values, target * channelStride, channelStride);
+    }
+    
+    void swapChannels( int first, int second ) {
+        for (int i = first * channelStride, j = second * channelStride, end = i + channelStride; i < end; ++i, ++j) {
+            double value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Tensor{ channels=%d, breadth=%d }", channels, breadth);
+    }
+}
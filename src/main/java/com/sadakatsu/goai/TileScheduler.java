@@ -0,0 +1,202 @@
+package com.sadakatsu.goai;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// TileScheduler splits a unit of work into numbered tiles and runs them across a fixed set of worker threads plus the
+// thread that submitted the work.  Unlike forking a task per Neuron, running a layer creates no objects: the workers
+// claim tile numbers from a shared cursor until none are left.  The cursor's upper half holds the generation of the
+// current work so that a worker that wakes late can never claim a tile of work submitted after the work it saw.
+//
+// Only one unit of work runs at a time; concurrent callers wait their turn.  A Tile must not submit work to the
+// TileScheduler that is running it.  Once shutdown() stops the workers, any later work runs on its submitter alone.
+final class TileScheduler {
+    interface Tile {
+        void run( int tile );
+    }
+    
+    // Giving each worker several tiles lets the faster workers pick up the slack of the slower ones.
+    private static final int TILES_PER_WORKER = 4;
+    
+    // Returns where the index-th of the parts that evenly divide the total starts.
+    static int split( int total, int parts, int index ) {
+        return (int) ((long) total * index / parts);
+    }
+    
+    private final int parallelism;
+    private final Object monitor = new Object();
+    private final ReentrantLock submission = new ReentrantLock();
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    
+    // These are guarded by monitor.
+    private int generation;
+    private Tile work;
+    private int tiles;
+    private Thread[] workers;
+    
+    // This is guarded by submission.
+    private boolean shutDown;
+    
+    private volatile Thread submitter;
+    
+    TileScheduler( int parallelism ) {
+        if (parallelism < 1) {
+            String message = String.format("The parallelism must be at least 1, but it was %d.", parallelism);
+            throw new IllegalArgumentException(message);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    int getParallelism() {
+        return parallelism;
+    }
+    
+    int getTargetTiles() {
+        return parallelism * TILES_PER_WORKER;
+    }
+    
+    void run( int tiles, Tile work ) {
+        if (parallelism == 1 || tiles == 1) {
+            runInline(tiles, work);
+            return;
+        }
+        
+        submission.lock();
+        try {
+            if (shutDown) {
+                runInline(tiles, work);
+                return;
+            }
+            
+            submitter = Thread.currentThread();
+            failure.set(null);
+            pending.set(tiles);
+            
+            int current;
+            synchronized (monitor) {
+                startWorkersIfNecessary();
+                current = ++generation;
+                this.work = work;
+                this.tiles = tiles;
+                cursor.set((long) current << 32);
+                monitor.notifyAll();
+            }
+            
+            runTiles(current, work, tiles);
+            while (pending.get() > 0) {
+                LockSupport.park(this);
+            }
+            
+            synchronized (monitor) {
+                this.work = null;
+            }
+            
+            rethrowFailure();
+        } finally {
+            submitter = null;
+            submission.unlock();
+        }
+    }
+    
+    // Waits for the running work, if any, to finish, then interrupts the workers so that they exit.
+    void shutdown() {
+        Thread[] stopping;
+        submission.lock();
+        try {
+            shutDown = true;
+            synchronized (monitor) {
+                stopping = workers;
+                workers = null;
+            }
+        } finally {
+            submission.unlock();
+        }
+        
+        if (stopping != null) {
+            for (Thread worker : stopping) {
+                worker.interrupt();
+            }
+        }
+    }
+    
+    private void runInline( int tiles, Tile work ) {
+        for (int tile = 0; tile < tiles; ++tile) {
+            work.run(tile);
+        }
+    }
+    
+    private void startWorkersIfNecessary() {
+        if (workers == null) {
+            workers = new Thread[parallelism - 1];
+            for (int i = 0; i < workers.length; ++i) {
+                Thread worker = new Thread(this::work, String.format("goai-tile-worker-%d", i));
+                worker.setDaemon(true);
+                worker.start();
+                workers[i] = worker;
+            }
+        }
+    }
+    
+    private void work() {
+        int seen = 0;
+        while (true) {
+            int current;
+            Tile currentWork;
+            int currentTiles;
+            
+            synchronized (monitor) {
+                while (generation == seen || work == null) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                current = generation;
+                currentWork = work;
+                currentTiles = tiles;
+            }
+            
+            runTiles(current, currentWork, currentTiles);
+            seen = current;
+        }
+    }
+    
+    private void runTiles( int current, Tile currentWork, int currentTiles ) {
+        while (true) {
+            long state = cursor.get();
+            int tile = (int) state;
+            if ((int) (state >>> 32) != current || tile >= currentTiles) {
+                break;
+            }
+            
+            if (cursor.compareAndSet(state, state + 1)) {
+                try {
+                    currentWork.run(tile);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                
+                if (pending.decrementAndGet() == 0) {
+                    LockSupport.unpark(submitter);
+                }
+            }
+        }
+    }
+    
+    private void rethrowFailure() {
+        Throwable t = failure.getAndSet(null);
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IllegalStateException("A tile failed.", t);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.sadakatsu.goai;
+
+import java.util.List;
+
+import com.sadakatsu.goai.GoAi.Evaluation;
+import com.sadakatsu.goai.GoAi.Neuron;
+
+// Trainer fits a GoAi's weights to TrainingExamples with mini-batch gradient descent.  Each step runs the batch
+// forward through the GoAi's engine, which records the orientation each RotationInvariantNeuron selected at every
+// cell, then backpropagates the examples' errors through those orientations.  The examples are split across the
+// GoAi's TileScheduler, and each tile accumulates its gradients into a Gradient of its own, so no two threads ever
+// write the same buffer.  The tiles' Gradients are then summed Neuron by Neuron, again across the scheduler, and the
+// Optimizer applies the batch's mean gradient to each Neuron.
+//
+// A training step changes the weights that evaluations read, so the GoAi must not evaluate anything while train()
+// runs.  Once train() returns, the engine has the new weights and the GoAi's EvaluationCache has been cleared; the
+// Evaluations made before it still hold the old network's outputs.
+public final class Trainer {
+    public static final class TrainerBuilder {
+        private final GoAi ai;
+        private Optimizer optimizer;
+        private double learningRate;
+        private double momentum;
+        
+        private TrainerBuilder( GoAi ai ) {
+            this.ai = ai;
+            this.optimizer = Optimizer.ADAM;
+            this.learningRate = DEFAULT_LEARNING_RATE;
+            this.momentum = DEFAULT_MOMENTUM;
+        }
+        
+        public TrainerBuilder optimizer( Optimizer optimizer ) {
+            if (optimizer == null) {
+                throw new IllegalArgumentException("The Optimizer may not be null.");
+            }
+            this.optimizer = optimizer;
+            return this;
+        }
+        
+        public TrainerBuilder learningRate( double learningRate ) {
+            if (!(learningRate > 0.) || Double.isInfinite(learningRate)) {
+                String message = String.format("The learning rate must be positive, but it was %s.", learningRate);
+                throw new IllegalArgumentException(message);
+            }
+            this.learningRate = learningRate;
+            return this;
+        }
+        
+        // The momentum only affects SGD.  Adam's decay rates are fixed at the values its authors recommend.
+        public TrainerBuilder momentum( double momentum ) {
+            if (!(momentum >= 0. && momentum < 1.)) {
+                String message = String.format("The momentum must be in [0, 1), but it was %s.", momentum);
+                throw new IllegalArgumentException(message);
+            }
+            this.momentum = momentum;
+            return this;
+        }
+        
+        public Trainer build() {
+            return new Trainer(this);
+        }
+    }
+    
+    private static final double DEFAULT_LEARNING_RATE = 1e-3;
+    private static final double DEFAULT_MOMENTUM = 0.9;
+    private static final double ADAM_FIRST_DECAY = 0.9;
+    private static final double ADAM_SECOND_DECAY = 0.999;
+    private static final double ADAM_EPSILON = 1e-8;
+    
+    public static TrainerBuilder newBuilder( GoAi ai ) {
+        if (ai == null) {
+            throw new IllegalArgumentException("The GoAi may not be null.");
+        }
+        return new TrainerBuilder(ai);
+    }
+    
+    private final GoAi ai;
+    private final Optimizer optimizer;
+    private final double learningRate;
+    private final double momentum;
+    private final TileScheduler scheduler;
+    private final Neuron[] neurons;
+    private final Gradient[] gradients;
+    
+    // SGD keeps its velocities in the first moments; only Adam uses the second.
+    private final Gradient firstMoments;
+    private final Gradient secondMoments;
+    
+    private long steps;
+    
+    // Adam divides its moments by these to correct their bias towards their initial zeros.  They only change between
+    // steps.
+    private double firstCorrection;
+    private double secondCorrection;
+    
+    private Trainer( TrainerBuilder builder ) {
+        this.ai = builder.ai;
+        this.optimizer = builder.optimizer;
+        this.learningRate = builder.learningRate;
+        this.momentum = builder.momentum;
+        this.scheduler = ai.getScheduler();
+        
+        Neuron[][] network = ai.getNetwork();
+        this.firstMoments = new Gradient(network);
+        this.secondMoments = optimizer == Optimizer.ADAM ? new Gradient(network) : null;
+        this.gradients = new Gradient[scheduler.getParallelism()];
+        
+        this.neurons = new Neuron[firstMoments.getNeuronCount()];
+        for (int layer = 0; layer < network.length; ++layer) {
+            for (int neuron = 0; neuron < network[layer].length; ++neuron) {
+                neurons[firstMoments.getIndex(layer, neuron)] = network[layer][neuron];
+            }
+        }
+    }
+    
+    public GoAi getAi() {
+        return ai;
+    }
+    
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+    
+    public double getLearningRate() {
+        return learningRate;
+    }
+    
+    public long getSteps() {
+        return steps;
+    }
+    
+    // Takes one step on the batch, and returns the batch's mean loss before the step.  An example's loss is half the
+    // sum of the squared differences between its targeted raw scores and the network's outputs for them.
+    public synchronized double train( List<TrainingExample> batch ) {
+        if (batch == null || batch.isEmpty() || batch.contains(null)) {
+            throw new IllegalArgumentException("The batch must hold at least one TrainingExample and no nulls.");
+        }
+        
+        Evaluation[] workspaces = new Evaluation[batch.size()];
+        try {
+            for (int i = 0; i < workspaces.length; ++i) {
+                TrainingExample example = batch.get(i);
+                workspaces[i] = ai.prepareTrainingExample(example.getGame(), example.getTargets());
+            }
+            ai.runNetwork(workspaces, true);
+            
+            int tiles = Math.min(gradients.length, workspaces.length);
+            double[] losses = new double[tiles];
+            scheduler.run(tiles, (tile) -> losses[tile] = backpropagate(workspaces, tiles, tile));
+            
+            ++steps;
+            firstCorrection = 1 - Math.pow(ADAM_FIRST_DECAY, steps);
+            secondCorrection = 1 - Math.pow(ADAM_SECOND_DECAY, steps);
+            double scale = 1. / workspaces.length;
+            scheduler.run(neurons.length, (neuron) -> update(neuron, tiles, scale));
+            ai.refreshWeights();
+            
+            double loss = 0.;
+            for (double tileLoss : losses) {
+                loss += tileLoss;
+            }
+            return loss * scale;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("A training step should never fail, but it did.", e);
+        } finally {
+            for (Evaluation workspace : workspaces) {
+                if (workspace != null) {
+                    workspace.release();
+                }
+            }
+        }
+    }
+    
+    private double backpropagate( Evaluation[] workspaces, int tiles, int tile ) {
+        Gradient gradient = gradients[tile];
+        if (gradient == null) {
+            gradient = new Gradient(ai.getNetwork());
+            gradients[tile] = gradient;
+        } else {
+            gradient.clear();
+        }
+        
+        double loss = 0.;
+        int first = TileScheduler.split(workspaces.length, tiles, tile);
+        int last = TileScheduler.split(workspaces.length, tiles, tile + 1);
+        for (int item = first; item < last; ++item) {
+            loss += ai.backpropagate(workspaces[item], gradient);
+        }
+        return loss;
+    }
+    
+    // Sums the tiles' gradients for the Neuron into the first tile's Gradient, then applies their mean.
+    private void update( int index, int tiles, double scale ) {
+        Neuron neuron = neurons[index];
+        Gradient total = gradients[0];
+        for (int tile = 1; tile < tiles; ++tile) {
+            Gradient gradient = gradients[tile];
+            total.biases[index] += gradient.biases[index];
+            
+            double[] totalWeights = total.weights[index];
+            double[] weights = gradient.weights[index];
+            for (int i = 0; i < totalWeights.length; ++i) {
+                totalWeights[i] += weights[i];
+            }
+        }
+        
+        double[] secondBiases = secondMoments == null ? null : secondMoments.biases;
+        neuron.bias -= getStep(firstMoments.biases, secondBiases, index, total.biases[index] * scale);
+        
+        double[] weights = neuron.weights;
+        double[] weightGradients = total.weights[index];
+        double[] firstWeights = firstMoments.weights[index];
+        double[] secondWeights = secondMoments == null ? null : secondMoments.weights[index];
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] -= getStep(firstWeights, secondWeights, i, weightGradients[i] * scale);
+        }
+        neuron.refreshOrientedWeights();
+    }
+    
+    // Updates the Optimizer's state for the parameter whose moments are at the slot of first and second, and returns
+    // the amount to subtract from the parameter.
+    private double getStep( double[] first, double[] second, int slot, double gradient ) {
+        final double step;
+        if (optimizer == Optimizer.ADAM) {
+            first[slot] = ADAM_FIRST_DECAY * first[slot] + (1 - ADAM_FIRST_DECAY) * gradient;
+            second[slot] = ADAM_SECOND_DECAY * second[slot] + (1 - ADAM_SECOND_DECAY) * gradient * gradient;
+            
+            double mean = first[slot] / firstCorrection;
+            double variance = second[slot] / secondCorrection;
+            step = learningRate * mean / (Math.sqrt(variance) + ADAM_EPSILON);
+        } else {
+            first[slot] = momentum * first[slot] + gradient;
+            step = learningRate * first[slot];
+        }
+        return step;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(
+            "Trainer{ optimizer=%s, learningRate=%s, momentum=%s, steps=%d }",
+            optimizer,
+            learningRate,
+            momentum,
+            steps
+        );
+    }
+}
@@ -0,0 +1,38 @@
+package com.sadakatsu.goai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sadakatsu.go.domain.Game;
+
+// A TrainingExample pairs a position with the Scores its network should produce.  Each target gives the raw player and
+// opponent scores expected for a legal move; the moves without targets are left out of the loss.
+public final class TrainingExample {
+    private final Game game;
+    private final List<Score> targets;
+    
+    public TrainingExample( Game game, List<Score> targets ) {
+        if (game == null || game.isOver()) {
+            String message = String.format("Received an untrainable game:\n%s", game);
+            throw new IllegalArgumentException(message);
+        }
+        if (targets == null || targets.isEmpty()) {
+            throw new IllegalArgumentException("A TrainingExample needs at least one target Score.");
+        }
+        if (targets.contains(null)) {
+            throw new IllegalArgumentException("The target Scores may not contain null.");
+        }
+        
+        this.game = game;
+        this.targets = Collections.unmodifiableList(new ArrayList<>(targets));
+    }
+    
+    public Game getGame() {
+        return game;
+    }
+    
+    public List<Score> getTargets() {
+        return targets;
+    }
+}
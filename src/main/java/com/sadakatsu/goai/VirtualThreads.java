@@ -0,0 +1,86 @@
+package com.sadakatsu.goai;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// VirtualThreads creates executors that run every task on a new virtual thread.  A game blocked on an
+// EvaluationBroker's future then only holds a few kilobytes of heap instead of a platform thread, so thousands of games
+// can wait on the broker's batches at once.
+//
+// Virtual threads need Java 21, so they are reached by reflection for this class to still work on Java 8.  When they
+// are unavailable, each task gets a new daemon platform thread instead, which behaves the same but does not scale to
+// as many games.
+final class VirtualThreads {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Method NAME = findMethod("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method FACTORY = findMethod("java.lang.Thread$Builder", "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(
+        Executors.class,
+        "newThreadPerTaskExecutor",
+        ThreadFactory.class
+    );
+    private static final boolean AVAILABLE = checkAvailability();
+    
+    private static Method findMethod( String className, String name, Class<?>...parameters ) {
+        try {
+            return findMethod(Class.forName(className), name, parameters);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+    
+    private static Method findMethod( Class<?> type, String name, Class<?>...parameters ) {
+        try {
+            return type.getMethod(name, parameters);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    // Java 19 and 20 have the methods, but only allow virtual threads with --enable-preview.
+    private static boolean checkAvailability() {
+        boolean available = false;
+        if (OF_VIRTUAL != null && NAME != null && FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                OF_VIRTUAL.invoke(null);
+                available = true;
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                LOGGER.debug("Virtual threads are unavailable: {}", e.toString());
+            }
+        }
+        
+        LOGGER.debug("Using {} threads for self-play games.", available ? "virtual" : "platform");
+        return available;
+    }
+    
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+    
+    // The threads are named the prefix followed by a number that counts up from 0.
+    static ExecutorService newThreadPerTaskExecutor( String prefix ) {
+        if (AVAILABLE) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+                ThreadFactory factory = (ThreadFactory) FACTORY.invoke(builder);
+                return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Creating a virtual thread executor should never fail, but it did.", e);
+            }
+        }
+        
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, prefix + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -7,43 +7,361 @@ import static com.sadakatsu.go.domain.intersection.Stone.WHITE;
 import static com.sadakatsu.go.domain.intersection.TemporarilyUnplayable.TEMPORARILY_UNPLAYABLE;
 
 import java.math.BigInteger;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import com.sadakatsu.go.domain.Coordinate;
 import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
 import com.sadakatsu.go.domain.intersection.Intersection;
 import com.sadakatsu.go.domain.intersection.Player;
 
+// A ZobristHash identifies a position up to the board's eight rotations and reflections and the inversion of its
+// colours, which makes sixteen variants of every position.  Each variant has a 128-bit Zobrist key: the XOR of one
+// random key per cell for the value the variant has there.  The variants place the cells differently and the inverted
+// ones swap Black and White, so playing a stone only needs two XORs per variant for each cell that changed rather than
+// rehashing the board.  The two cells after the board hold the player to move after a pass and the player to move,
+// and are never transformed.  The canonical variant is the one with the least key, so equivalent positions share it.
+//
+// Many hashes are only ever asked for their original key, so a new hash only builds variant 0's key.  The other
+// variants' keys are built and the canonical variant chosen the first time something needs them: equals(),
+// hashCode(), or one of the canonical getters.  A hash advanced from one whose variants were built keeps all of its
+// keys up to date, so only the choice of the canonical variant is left for later.  Choosing it compares the keys'
+// high words first, which rejects nearly every variant without looking at the low words.
+//
+// The keys are only probably unique.  The cells are kept as well, so canonicallyEquals() can still compare two
+// positions exactly.  Setting the "goai.verifyZobristHash" system property to "true" makes equals() confirm every key
+// match this way, counting the key matches and the collisions it finds, and makes advance() compare itself against a
+// full hash of the same Game.
 public class ZobristHash {
-    private static final BigInteger SHIFT;
-    private static final Map<Intersection, BigInteger> HASHES;
-    
-    static {
-        SHIFT = BigInteger.valueOf(5L);
+    // The random keys for a dimension, and where each variant places each cell.
+    private static final class Tables {
+        final int[][] placements;
+        final long[] keys;
         
-        HASHES = new HashMap<>();
-        HASHES.put(EMPTY, BigInteger.ZERO);
-        HASHES.put(BLACK, BigInteger.ONE);
-        HASHES.put(WHITE, BigInteger.valueOf(2L));
-        HASHES.put(TEMPORARILY_UNPLAYABLE, BigInteger.valueOf(3L));
-        HASHES.put(PERMANENTLY_UNPLAYABLE, BigInteger.valueOf(4L));
+        Tables( int dimension ) {
+            int intersections = dimension * dimension;
+            
+            placements = new int[8][intersections];
+            for (int row = 0, rowOpposite = dimension - 1; row < dimension; ++row, --rowOpposite) {
+                for (int column = 0, columnOpposite = dimension - 1; column < dimension; ++column, --columnOpposite) {
+                    int cell = row * dimension + column;
+                    placements[0][cell] = row * dimension + column;                 // no flips, no rotations
+                    placements[1][cell] = row * dimension + columnOpposite;         // flip horizontally, no rotations
+                    placements[2][cell] = rowOpposite * dimension + column;         // flip vertically, no rotations
+                    placements[3][cell] = rowOpposite * dimension + columnOpposite; // flip both OR rotate twice
+                    placements[4][cell] = column * dimension + row;                 // flip horizontally, rotate 90
+                    placements[5][cell] = column * dimension + rowOpposite;         // no flips, rotate 90 (left)
+                    placements[6][cell] = columnOpposite * dimension + row;         // no flips, rotate -90 (right)
+                    placements[7][cell] = columnOpposite * dimension + rowOpposite; // flip horizontally, rotate -90
+                }
+            }
+            
+            // The keys are seeded by the dimension so that a position always gets the same hash.
+            SplittableRandom random = new SplittableRandom(TABLE_SEED + dimension);
+            keys = new long[(intersections + 2) * TYPES * 2];
+            for (int i = 0; i < keys.length; ++i) {
+                keys[i] = random.nextLong();
+            }
+        }
+    }
+    
+    private static final long TABLE_SEED = 0x5A0B815EL;
+    private static final int TYPES = 5;
+    private static final int[] INVERTED_TYPES = { 0, 2, 1, 3, 4 };
+    private static final Intersection[] INTERSECTIONS = {
+        EMPTY,
+        BLACK,
+        WHITE,
+        TEMPORARILY_UNPLAYABLE,
+        PERMANENTLY_UNPLAYABLE
+    };
+    private static final Map<Integer, Tables> TABLES = new ConcurrentHashMap<>();
+    
+    private static final boolean VERIFY = Boolean.getBoolean("goai.verifyZobristHash");
+    private static final AtomicLong KEY_MATCHES = new AtomicLong();
+    private static final AtomicLong COLLISIONS = new AtomicLong();
+    
+    // Only counted when the "goai.verifyZobristHash" property is "true".
+    public static long getKeyMatches() {
+        return KEY_MATCHES.get();
+    }
+    
+    public static long getCollisions() {
+        return COLLISIONS.get();
+    }
+    
+    private static int getType( Intersection value ) {
+        int type;
+        if (value == EMPTY) {
+            type = 0;
+        } else if (value == BLACK) {
+            type = 1;
+        } else if (value == WHITE) {
+            type = 2;
+        } else if (value == TEMPORARILY_UNPLAYABLE) {
+            type = 3;
+        } else if (value == PERMANENTLY_UNPLAYABLE) {
+            type = 4;
+        } else {
+            String message = String.format("ZobristHash cannot hash the Intersection %s.", value);
+            throw new IllegalArgumentException(message);
+        }
+        return type;
+    }
+    
+    private static BigInteger toBigInteger( long high, long low ) {
+        byte[] bytes = new byte[17];
+        for (int i = 0; i < 8; ++i) {
+            bytes[8 - i] = (byte) (high >>> (i * 8));
+            bytes[16 - i] = (byte) (low >>> (i * 8));
+        }
+        return new BigInteger(bytes);
     }
     
-    private final BigInteger canonicalHash;
-    private final BigInteger originalHash;
-    private final int canonicalIndex;
     private final int dimension;
-    private final Intersection canonicalPlayer;
-    private final Intersection originalPlayer;
+    private final Tables tables;
+    
+    // The value types of the board's cells row by row, followed by the two player cells.
+    private final byte[] cells;
+    
+    // The high and low words of each variant's key.  Variants 8 through 15 invert variants 0 through 7.
+    private final long[] keys;
+    
+    // The keys of variants 1 through 15 are only valid once symmetryKeys is true, and the canonical fields only once
+    // canonicalized is true.  Both are set under the hash's lock by canonicalize().
+    private volatile boolean symmetryKeys;
+    private volatile boolean canonicalized;
+    private int canonicalIndex;
+    private Intersection canonicalPlayer;
+    private Intersection originalPlayer;
     
     private Integer javaHash;
     
     public ZobristHash( Game game ) {
         dimension = game.getDimension();
+        tables = TABLES.computeIfAbsent(dimension, Tables::new);
+        
+        int intersections = dimension * dimension;
+        cells = new byte[intersections + 2];
+        keys = new long[32];
         
+        // Every cell starts out holding the type 0 (EMPTY) so that setCell() can fill it.
+        for (int cell = 0; cell < cells.length; ++cell) {
+            toggle(cell, 0);
+        }
+        
+        for (int row = 0; row < dimension; ++row) {
+            for (int column = 0; column < dimension; ++column) {
+                refresh(game, row * dimension + column);
+            }
+        }
+        setPlayers(game);
+    }
+    
+    // The flag must be read before the keys are copied; if it was still false, the copied symmetry keys are ignored.
+    private ZobristHash( ZobristHash source ) {
+        dimension = source.dimension;
+        tables = source.tables;
+        symmetryKeys = source.symmetryKeys;
+        cells = source.cells.clone();
+        keys = source.keys.clone();
+    }
+    
+    // Returns the hash of next, which must be the result of playing a single Move in the position this hashes.  Only
+    // the cells that the Move can change are read from next: the played cell, the stones it captured, and the cells
+    // that were temporarily unplayable.  This relies on a capture being the only way for a cell to become temporarily
+    // unplayable and on permanently unplayable cells staying that way.
+    public ZobristHash advance( Game next ) {
+        if (next == null || next.getMovesPlayed() == 0 || next.getDimension() != dimension) {
+            String message = String.format(
+                "A ZobristHash of dimension %d cannot advance to the Game\n%s",
+                dimension,
+                next
+            );
+            throw new IllegalArgumentException(message);
+        }
+        
+        ZobristHash result = new ZobristHash(this);
+        result.applyMove(next, next.getPreviousMove());
+        
+        if (VERIFY) {
+            ZobristHash expected = new ZobristHash(next);
+            if (!result.exactlyEquals(expected) || result.getCanonicalIndex() != expected.getCanonicalIndex()) {
+                String message = String.format(
+                    "Advancing %s produced %s, but the full hash is %s for\n%s",
+                    this,
+                    result,
+                    expected,
+                    next
+                );
+                throw new IllegalStateException(message);
+            }
+        }
+        
+        return result;
+    }
+    
+    // Returns the hash of the position after the player to move plays the Move, or null if that cannot be worked out
+    // from the cells alone.  A stone that neither captures nor commits suicide only changes its own cell and the
+    // player cells, so that is the only case handled here.  A pass, a capture, a suicide, a finished game, or a
+    // position with temporarily unplayable cells all need the Game, so the caller should advance() to it instead.
+    ZobristHash tryAdvance( Move move ) {
+        int intersections = dimension * dimension;
+        int player = cells[intersections + 1];
+        if (!(move instanceof Coordinate) || player == 0 || hasTemporarilyUnplayableCells()) {
+            return null;
+        }
+        
+        Coordinate coordinate = (Coordinate) move;
+        int played = (coordinate.getRow() - 1) * dimension + coordinate.getColumn() - 1;
+        if (cells[played] != 0) {
+            String message = String.format("%s cannot be played because it is %s.", move, INTERSECTIONS[cells[played]]);
+            throw new IllegalArgumentException(message);
+        }
+        
+        // The stone captures exactly when a neighboring group of the opponent has no liberty besides the played cell.
+        int opponent = INVERTED_TYPES[player];
+        boolean hasLiberty = false;
+        int[] neighbors = new int[4];
+        int count = collectNeighbors(played, neighbors);
+        for (int i = 0; i < count; ++i) {
+            int type = cells[neighbors[i]];
+            if (type == 0) {
+                hasLiberty = true;
+            } else if (type == opponent && !hasLibertyBesides(neighbors[i], played)) {
+                return null;
+            }
+        }
+        
+        for (int i = 0; !hasLiberty && i < count; ++i) {
+            hasLiberty = cells[neighbors[i]] == player && hasLibertyBesides(neighbors[i], played);
+        }
+        if (!hasLiberty) {
+            return null;
+        }
+        
+        // The player who moved would move again if the opponent passed.
+        ZobristHash result = new ZobristHash(this);
+        result.setCell(played, player);
+        result.setCell(intersections, player);
+        result.setCell(intersections + 1, opponent);
+        result.originalPlayer = INTERSECTIONS[opponent];
+        return result;
+    }
+    
+    private boolean hasTemporarilyUnplayableCells() {
+        boolean found = false;
+        for (int cell = 0; !found && cell < dimension * dimension; ++cell) {
+            found = cells[cell] == 3;
+        }
+        return found;
+    }
+    
+    // Searches the group containing the stone for an empty cell other than the excluded one.
+    private boolean hasLibertyBesides( int stone, int excluded ) {
+        int type = cells[stone];
+        boolean[] visited = new boolean[dimension * dimension];
+        int[] stack = new int[dimension * dimension];
+        int[] neighbors = new int[4];
+        int top = 0;
+        
+        visited[stone] = true;
+        stack[top++] = stone;
+        while (top > 0) {
+            int count = collectNeighbors(stack[--top], neighbors);
+            for (int i = 0; i < count; ++i) {
+                int neighbor = neighbors[i];
+                if (cells[neighbor] == 0 && neighbor != excluded) {
+                    return true;
+                } else if (cells[neighbor] == type && !visited[neighbor]) {
+                    visited[neighbor] = true;
+                    stack[top++] = neighbor;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private void applyMove( Game next, Move move ) {
+        int intersections = dimension * dimension;
+        for (int cell = 0; cell < intersections; ++cell) {
+            if (cells[cell] == 3) {
+                refresh(next, cell);
+            }
+        }
+        
+        if (move instanceof Coordinate) {
+            Coordinate coordinate = (Coordinate) move;
+            int played = (coordinate.getRow() - 1) * dimension + coordinate.getColumn() - 1;
+            refresh(next, played);
+            
+            int[] neighbors = new int[4];
+            int count = collectNeighbors(played, neighbors);
+            for (int i = 0; i < count; ++i) {
+                int neighbor = neighbors[i];
+                byte type = cells[neighbor];
+                if ((type == 1 || type == 2) && refresh(next, neighbor)) {
+                    removeCapturedGroup(next, neighbor, type);
+                }
+            }
+        }
+        
+        setPlayers(next);
+    }
+    
+    // The rest of a captured stone's group is found from the cells still holding its colour.  Each stone is refreshed
+    // as it is reached, so it is never reached twice.
+    private void removeCapturedGroup( Game next, int first, byte type ) {
+        int[] stack = new int[dimension * dimension];
+        int[] neighbors = new int[4];
+        int top = 0;
+        
+        stack[top++] = first;
+        while (top > 0) {
+            int count = collectNeighbors(stack[--top], neighbors);
+            for (int i = 0; i < count; ++i) {
+                int neighbor = neighbors[i];
+                if (cells[neighbor] == type) {
+                    refresh(next, neighbor);
+                    stack[top++] = neighbor;
+                }
+            }
+        }
+    }
+    
+    private int collectNeighbors( int cell, int[] neighbors ) {
+        int row = cell / dimension;
+        int column = cell % dimension;
+        
+        int count = 0;
+        if (row > 0) {
+            neighbors[count++] = cell - dimension;
+        }
+        if (row < dimension - 1) {
+            neighbors[count++] = cell + dimension;
+        }
+        if (column > 0) {
+            neighbors[count++] = cell - 1;
+        }
+        if (column < dimension - 1) {
+            neighbors[count++] = cell + 1;
+        }
+        return count;
+    }
+    
+    // Returns whether the cell's value changed.
+    private boolean refresh( Game game, int cell ) {
+        Coordinate coordinate = Coordinate.get(cell % dimension + 1, cell / dimension + 1);
+        return setCell(cell, getType(game.get(coordinate)));
+    }
+    
+    private void setPlayers( Game game ) {
         Intersection player;
         try {
             player = (Intersection) game.getCurrentPlayer();
@@ -53,59 +371,90 @@ public class ZobristHash {
         originalPlayer = player;
         
         Intersection playerAfterPass = (game.wouldPassEndGame() ? EMPTY : invertIntersection(originalPlayer));
-        Intersection invertedPlayerAfterPass = invertIntersection(playerAfterPass);
         
         int intersections = dimension * dimension;
-        Intersection[][] variants = new Intersection[16][intersections + 2];
-        for (int row = 0, rowOpposite = dimension - 1; row < dimension; ++row, --rowOpposite) {
-            for (int column = 0, columnOpposite = dimension - 1; column < dimension; ++column, --columnOpposite) {
-                Coordinate coordinate = Coordinate.get(column + 1, row + 1);
-                Intersection value = game.get(coordinate);
-                Intersection inverted = invertIntersection(value);
-                int[] boardIndices = new int[] {
-                    getBoardIndex(row, column),                 // no flips, no rotations
-                    getBoardIndex(row, columnOpposite),         // flip horizontally, no rotations
-                    getBoardIndex(rowOpposite, column),         // flip vertically, no rotations
-                    getBoardIndex(rowOpposite, columnOpposite), // flip both OR rotate twice
-                    getBoardIndex(column, row),                 // flip horizontally, rotate 90 (left)
-                    getBoardIndex(column, rowOpposite),         // no flips, rotate 90 (left)
-                    getBoardIndex(columnOpposite, row),         // no flips, rotate -90 (right)
-                    getBoardIndex(columnOpposite, rowOpposite)  // flip horizontally, rotate -90 (right)
-                };
-                for (int variantIndex = 0; variantIndex < 8; ++variantIndex) {
-                    int boardIndex = boardIndices[variantIndex];
-                    variants[variantIndex][boardIndex] = value;
-                    variants[variantIndex + 8][boardIndex] = inverted;
-                }
-            }
+        setCell(intersections, getType(playerAfterPass));
+        setCell(intersections + 1, getType(player));
+    }
+    
+    private boolean setCell( int cell, int type ) {
+        int current = cells[cell];
+        boolean changed = current != type;
+        if (changed) {
+            toggle(cell, current);
+            toggle(cell, type);
+            cells[cell] = (byte) type;
         }
+        return changed;
+    }
+    
+    // XORs the keys for the cell holding the type into variant 0's key, and into the other variants' keys if they
+    // have been built.  Variant 0 leaves every cell where it is.
+    private void toggle( int cell, int type ) {
+        int key = (cell * TYPES + type) * 2;
+        keys[0] ^= tables.keys[key];
+        keys[1] ^= tables.keys[key + 1];
         
-        Intersection invertedPlayer = invertIntersection(player);
-        for (int i = 0; i < 8; ++i) {
-            variants[i][intersections] = playerAfterPass;
-            variants[i][intersections + 1] = player;
-            variants[i + 8][intersections] = invertedPlayerAfterPass;
-            variants[i + 8][intersections + 1] = invertedPlayer;
+        if (symmetryKeys) {
+            toggleSymmetries(cell, type);
         }
-        
-        originalHash = buildHash(variants[0]);
-        BigInteger chosenHash = originalHash;
+    }
+    
+    private void toggleSymmetries( int cell, int type ) {
+        int intersections = dimension * dimension;
+        int invertedType = INVERTED_TYPES[type];
+        for (int variant = 0; variant < 8; ++variant) {
+            int placed = cell < intersections ? tables.placements[variant][cell] : cell;
+            int invertedKey = (placed * TYPES + invertedType) * 2;
+            if (variant > 0) {
+                int key = (placed * TYPES + type) * 2;
+                keys[variant * 2] ^= tables.keys[key];
+                keys[variant * 2 + 1] ^= tables.keys[key + 1];
+            }
+            keys[variant * 2 + 16] ^= tables.keys[invertedKey];
+            keys[variant * 2 + 17] ^= tables.keys[invertedKey + 1];
+        }
+    }
+    
+    // Building every variant's key before advancing lets each advanced hash keep them up to date by XOR instead of
+    // building them again.
+    void canonicalize() {
+        if (!canonicalized) {
+            synchronized (this) {
+                if (!canonicalized) {
+                    if (!symmetryKeys) {
+                        Arrays.fill(keys, 2, keys.length, 0L);
+                        for (int cell = 0; cell < cells.length; ++cell) {
+                            toggleSymmetries(cell, cells[cell]);
+                        }
+                        symmetryKeys = true;
+                    }
+                    chooseCanonicalVariant();
+                    canonicalized = true;
+                }
+            }
+        }
+    }
+    
+    private void chooseCanonicalVariant() {
         int chosenIndex = 0;
-        Intersection chosenPlayer = player;
         for (int currentIndex = 1; currentIndex < 16; ++currentIndex) {
-            BigInteger currentHash = buildHash(variants[currentIndex]);
-            if (currentHash.compareTo(chosenHash) < 0) {
-                chosenHash = currentHash;
+            if (compareKeys(keys, currentIndex, keys, chosenIndex) < 0) {
                 chosenIndex = currentIndex;
-                if (currentIndex >= 8) {
-                    chosenPlayer = invertedPlayer;
-                }
             }
         }
         
-        canonicalPlayer = chosenPlayer;
-        canonicalHash = chosenHash;
         canonicalIndex = chosenIndex;
+        canonicalPlayer = chosenIndex < 8 ? originalPlayer : invertIntersection(originalPlayer);
+    }
+    
+    // The keys are compared as unsigned 128-bit numbers.
+    private static int compareKeys( long[] first, int firstVariant, long[] second, int secondVariant ) {
+        int comparison = Long.compareUnsigned(first[firstVariant * 2], second[secondVariant * 2]);
+        if (comparison == 0) {
+            comparison = Long.compareUnsigned(first[firstVariant * 2 + 1], second[secondVariant * 2 + 1]);
+        }
+        return comparison;
     }
     
     private Intersection invertIntersection( Intersection value ) {
@@ -116,42 +465,50 @@ public class ZobristHash {
         return inverted;
     }
     
-    private int getBoardIndex( int row, int column ) {
-        return row * dimension + column;
-    }
-    
-    private BigInteger buildHash( Intersection[] values ) {
-        BigInteger hash = BigInteger.ZERO;
+    // The cells of a variant, laid out as the cells field is.
+    private byte[] buildVariant( int variant ) {
+        int intersections = dimension * dimension;
+        int[] placement = tables.placements[variant % 8];
+        boolean inverted = variant >= 8;
         
-        for (int i = values.length - 1; i >= 0; --i) {
-            Intersection value = values[i];
-            BigInteger addend = HASHES.get(value);
-            hash = hash.multiply(SHIFT).add(addend);
+        byte[] values = new byte[cells.length];
+        for (int cell = 0; cell < cells.length; ++cell) {
+            int placed = cell < intersections ? placement[cell] : cell;
+            values[placed] = (byte) (inverted ? INVERTED_TYPES[cells[cell]] : cells[cell]);
         }
-        
-        return hash;
+        return values;
     }
     
     public BigInteger getCanonicalHash() {
-        return canonicalHash;
+        canonicalize();
+        return toBigInteger(keys[canonicalIndex * 2], keys[canonicalIndex * 2 + 1]);
     }
-
+    
     public BigInteger getOriginalHash() {
-        return originalHash;
+        return toBigInteger(keys[0], keys[1]);
     }
-
+    
+    // Orders hashes by their canonical keys without building BigIntegers.
+    public int compareCanonicalTo( ZobristHash that ) {
+        this.canonicalize();
+        that.canonicalize();
+        return compareKeys(this.keys, this.canonicalIndex, that.keys, that.canonicalIndex);
+    }
+    
     public int getCanonicalIndex() {
+        canonicalize();
         return canonicalIndex;
     }
-
+    
     public int getDimension() {
         return dimension;
     }
-
+    
     public Intersection getCanonicalPlayer() {
+        canonicalize();
         return canonicalPlayer;
     }
-
+    
     public Intersection getOriginalPlayer() {
         return originalPlayer;
     }
@@ -159,16 +516,39 @@ public class ZobristHash {
     public boolean exactlyEquals( ZobristHash that ) {
         return (
             this == that ||
-            that != null && this.dimension == that.dimension && this.originalHash.equals(that.originalHash)
+            that != null && this.dimension == that.dimension && compareKeys(this.keys, 0, that.keys, 0) == 0
         );
     }
-
+    
+    // Compares the canonical variants cell by cell instead of by their keys, so this cannot be fooled by a collision.
+    public boolean canonicallyEquals( ZobristHash that ) {
+        return (
+            this == that ||
+            that != null &&
+            this.dimension == that.dimension &&
+            Arrays.equals(this.buildVariant(this.getCanonicalIndex()), that.buildVariant(that.getCanonicalIndex()))
+        );
+    }
+    
     @Override
     public boolean equals( Object other ) {
         boolean result = this == other;
         if (!result && other != null && ZobristHash.class.equals(other.getClass())) {
             ZobristHash that = (ZobristHash) other;
-            result = this.dimension == that.dimension && this.canonicalHash.equals(that.canonicalHash);
+            this.canonicalize();
+            that.canonicalize();
+            result = (
+                this.dimension == that.dimension &&
+                compareKeys(this.keys, this.canonicalIndex, that.keys, that.canonicalIndex) == 0
+            );
+            
+            if (result && VERIFY) {
+                KEY_MATCHES.incrementAndGet();
+                if (!canonicallyEquals(that)) {
+                    COLLISIONS.incrementAndGet();
+                    result = false;
+                }
+            }
         }
         return result;
     }
@@ -176,9 +556,11 @@ public class ZobristHash {
     @Override
     public int hashCode() {
         if (javaHash == null) {
+            canonicalize();
             HashCodeBuilder builder = new HashCodeBuilder();
             builder.append(dimension);
-            builder.append(canonicalHash);
+            builder.append(keys[canonicalIndex * 2]);
+            builder.append(keys[canonicalIndex * 2 + 1]);
             javaHash = builder.toHashCode();
         }
         
@@ -187,13 +569,17 @@ public class ZobristHash {
     
     @Override
     public String toString() {
+        canonicalize();
         return String.format(
-            "ZobristHash{ dimension=%d, canonicalPlayer=%s, canonicalHash=%s, originalPlayer=%s, originalHash=%s, canonicalIndex=%d }",
+            "ZobristHash{ dimension=%d, canonicalPlayer=%s, canonicalHash=%016x%016x, originalPlayer=%s, " +
+            "originalHash=%016x%016x, canonicalIndex=%d }",
             dimension,
             canonicalPlayer,
-            canonicalHash,
+            keys[canonicalIndex * 2],
+            keys[canonicalIndex * 2 + 1],
             originalPlayer,
-            originalHash,
+            keys[0],
+            keys[1],
             canonicalIndex
         );
     }
@@ -1,5 +0,0 @@
-package com.sadakatsu.util;
-
-public interface NiladicFunction<T> {
-    T run() throws Exception;
-}
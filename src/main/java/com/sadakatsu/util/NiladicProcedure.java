@@ -1,5 +0,0 @@
-package com.sadakatsu.util;
-
-public interface NiladicProcedure {
-    void run() throws Exception;
-}
@@ -0,0 +1,79 @@
+package com.sadakatsu.util;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// A Timer accumulates the durations of one kind of call.  Timers are registered once through Timers.register() and
+// kept in static fields, so that timing a call is only reading System.nanoTime() before and after it and adding the
+// difference to striped counters.  Nothing is formatted, logged or allocated until Timers reports.
+//
+//     long start = System.nanoTime();
+//     doSomething();
+//     start = DO_SOMETHING.lap(start);
+//     doSomethingElse();
+//     DO_SOMETHING_ELSE.lap(start);
+public final class Timer {
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAccumulator maximum = new LongAccumulator(Math::max, 0);
+    
+    Timer( String name ) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Records the time since start as one call, and returns the current time to start the next Timer with.
+    public long lap( long start ) {
+        return lap(start, 1);
+    }
+    
+    // Records the time since start as one call that handled the passed number of items, such as the Games of a batch.
+    public long lap( long start, int items ) {
+        long now = System.nanoTime();
+        record(now - start, items);
+        return now;
+    }
+    
+    public void record( long elapsedNanos, int items ) {
+        calls.increment();
+        this.items.add(items);
+        nanos.add(elapsedNanos);
+        maximum.accumulate(elapsedNanos);
+    }
+    
+    public long getCalls() {
+        return calls.sum();
+    }
+    
+    public long getItems() {
+        return items.sum();
+    }
+    
+    public long getTotalNanos() {
+        return nanos.sum();
+    }
+    
+    public long getMaximumNanos() {
+        return maximum.get();
+    }
+    
+    @Override
+    public String toString() {
+        long calls = getCalls();
+        long nanos = getTotalNanos();
+        return String.format(
+            "Timer{ name=%s, calls=%d, items=%d, totalMs=%.3f, meanUs=%.1f, maximumUs=%.1f }",
+            name,
+            calls,
+            getItems(),
+            nanos / 1e6,
+            calls == 0 ? 0. : nanos / 1e3 / calls,
+            getMaximumNanos() / 1e3
+        );
+    }
+}
@@ -0,0 +1,109 @@
+package com.sadakatsu.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Timers registers the Timers by name and reports them all at once, either on demand or periodically on a daemon
+// thread.  Each report lists every Timer that was called since the previous report with its calls and mean time over
+// that interval, followed by its totals since it was registered.
+public final class Timers {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Timers.class);
+    private static final ConcurrentMap<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    
+    // The calls and nanoseconds of each Timer as of the previous report.
+    private static final Map<Timer, long[]> REPORTED = new HashMap<>();
+    
+    private static ScheduledExecutorService reporter;
+    private static ScheduledFuture<?> reporting;
+    
+    private Timers() {}
+    
+    // Registering the same name again returns the same Timer.
+    public static Timer register( String name ) {
+        if (name == null) {
+            throw new IllegalArgumentException("The name may not be null.");
+        }
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+    
+    // Logs a report every period until stopReporting() is called, replacing any earlier schedule.
+    public static synchronized void startReporting( long period, TimeUnit unit ) {
+        if (period < 1) {
+            String message = String.format("The period must be at least 1, but it was %d.", period);
+            throw new IllegalArgumentException(message);
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("The TimeUnit may not be null.");
+        }
+        
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "timers-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (reporting != null) {
+            reporting.cancel(false);
+        }
+        reporting = reporter.scheduleAtFixedRate(Timers::logReport, period, period, unit);
+    }
+    
+    public static synchronized void stopReporting() {
+        if (reporting != null) {
+            reporting.cancel(false);
+            reporting = null;
+        }
+    }
+    
+    public static void logReport() {
+        if (LOGGER.isInfoEnabled()) {
+            String report = report();
+            if (!report.isEmpty()) {
+                LOGGER.info("Timers:\n{}", report);
+            }
+        }
+    }
+    
+    // Returns one line for each Timer called since the previous report, in order of name.
+    public static synchronized String report() {
+        List<Timer> timers = new ArrayList<>(TIMERS.values());
+        timers.sort((a, b) -> a.getName().compareTo(b.getName()));
+        
+        StringBuilder builder = new StringBuilder();
+        for (Timer timer : timers) {
+            long calls = timer.getCalls();
+            long nanos = timer.getTotalNanos();
+            long[] previous = REPORTED.computeIfAbsent(timer, (key) -> new long[2]);
+            long intervalCalls = calls - previous[0];
+            long intervalNanos = nanos - previous[1];
+            previous[0] = calls;
+            previous[1] = nanos;
+            
+            if (intervalCalls > 0) {
+                builder.append(String.format(
+                    "  %s: %d calls, mean %.3f ms; total %d calls, %d items, %.3f ms, maximum %.3f ms%n",
+                    timer.getName(),
+                    intervalCalls,
+                    intervalNanos / 1e6 / intervalCalls,
+                    calls,
+                    timer.getItems(),
+                    nanos / 1e6,
+                    timer.getMaximumNanos() / 1e6
+                ));
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.sadakatsu.goai;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// VectorOrientationKernel keeps the eight orientations' sums in the lanes of two 256-bit vectors: orientations 0
+// through 3 in the low vector and 4 through 7 in the high one.  Each input value is broadcast across a vector and
+// multiplied by the next eight weights of the bank, which are already laid out in lane order.  The multiplication and
+// the addition are separate operations, just as in the scalar kernel, so every lane rounds exactly as its scalar
+// counterpart does.  The greatest sum and the first lane holding it are then found without leaving the registers.
+//
+// This class is only compiled by the "vector" profile and is loaded by OrientationKernel.getInstance() by name.
+final class VectorOrientationKernel extends OrientationKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+    private static final int LANES = 4;
+    
+    VectorOrientationKernel() {
+        if (DoubleVector.SPECIES_PREFERRED.vectorBitSize() < SPECIES.vectorBitSize()) {
+            String message = String.format(
+                "This CPU only supports %d-bit vectors, so the %d-bit kernel would be slower than the scalar one.",
+                DoubleVector.SPECIES_PREFERRED.vectorBitSize(),
+                SPECIES.vectorBitSize()
+            );
+            throw new UnsupportedOperationException(message);
+        }
+    }
+    
+    @Override
+    int calculate(
+        double[] bank,
+        double bias,
+        double[] input,
+        int start,
+        int breadth,
+        int channelStride,
+        int channels,
+        int width,
+        double[] output,
+        int outputIndex
+    ) {
+        DoubleVector low = DoubleVector.broadcast(SPECIES, bias);
+        DoubleVector high = low;
+        
+        int slot = 0;
+        for (int channel = 0, channelStart = start; channel < channels; ++channel, channelStart += channelStride) {
+            for (int row = 0, inputRow = channelStart; row < width; ++row, inputRow += breadth) {
+                for (int column = 0; column < width; ++column, slot += 8) {
+                    DoubleVector inputValue = DoubleVector.broadcast(SPECIES, input[inputRow + column]);
+                    low = low.add(inputValue.mul(DoubleVector.fromArray(SPECIES, bank, slot)));
+                    high = high.add(inputValue.mul(DoubleVector.fromArray(SPECIES, bank, slot + LANES)));
+                }
+            }
+        }
+        
+        double best = Math.max(low.reduceLanes(VectorOperators.MAX), high.reduceLanes(VectorOperators.MAX));
+        int selected = low.compare(VectorOperators.EQ, best).firstTrue();
+        if (selected == LANES) {
+            selected += high.compare(VectorOperators.EQ, best).firstTrue();
+        }
+        
+        // Only a NaN sum can escape both comparisons.  The scalar kernel keeps orientation 0 in that case too.
+        if (selected == 2 * LANES) {
+            selected = 0;
+        }
+        
+        // The lane is read back rather than using best so that a tie between 0.0 and -0.0 yields the sum that the
+        // scalar kernel would have chosen.
+        output[outputIndex] = selected < LANES ? low.lane(selected) : high.lane(selected - LANES);
+        return selected;
+    }
+}
@@ -0,0 +1,102 @@
+package com.sadakatsu.goai;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+public class ConvolutionBackendTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 3;
+    private static final int CHANNELS = 6;
+    private static final long SEED = 10L;
+    private static final int PARALLELISM = 4;
+    private static final int GAMES = 4;
+    private static final int MAXIMUM_MOVES = 30;
+    
+    // The scalar kernels sum the products in the same order, but the vector kernels may not, so allow for rounding.
+    private static final double TOLERANCE = 1e-12;
+    
+    @Test
+    public void backendsAgreeWhenEvaluatingSingly() throws Exception {
+        List<Game> games = playGames();
+        try (GoAi reference = build(ConvolutionBackend.PER_NEURON)) {
+            for (ConvolutionBackend backend : ConvolutionBackend.values()) {
+                try (GoAi candidate = build(backend)) {
+                    for (boolean parallelize : new boolean[] { false, true }) {
+                        for (Game game : games) {
+                            Evaluation expected = reference.evaluate(game, false);
+                            Evaluation actual = candidate.evaluate(game, parallelize);
+                            assertSameNetwork(reference.getLayers(), expected, actual);
+                            expected.release();
+                            actual.release();
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void backendsAgreeWhenEvaluatingBatches() throws Exception {
+        List<Game> games = playGames();
+        try (GoAi reference = build(ConvolutionBackend.PER_NEURON)) {
+            for (ConvolutionBackend backend : ConvolutionBackend.values()) {
+                try (GoAi candidate = build(backend)) {
+                    for (boolean parallelize : new boolean[] { false, true }) {
+                        List<Evaluation> expected = reference.evaluateAll(games, false);
+                        List<Evaluation> actual = candidate.evaluateAll(games, parallelize);
+                        for (int i = 0; i < games.size(); ++i) {
+                            assertSameNetwork(reference.getLayers(), expected.get(i), actual.get(i));
+                            expected.get(i).release();
+                            actual.get(i).release();
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private static GoAi build( ConvolutionBackend backend ) {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS)
+            .seed(SEED)
+            .backend(backend)
+            .parallelism(PARALLELISM)
+            .build();
+    }
+    
+    private static List<Game> playGames() throws Exception {
+        List<Game> games = new ArrayList<>();
+        for (int seed = 0; seed < GAMES; ++seed) {
+            Random random = new Random(seed);
+            Game game = Game.newBuilder(BOARD_SIZE).build();
+            for (int moves = 0; !game.isOver() && moves < MAXIMUM_MOVES; ++moves) {
+                games.add(game);
+                game = game.play(RandomGames.pickMove(game, random));
+            }
+        }
+        return games;
+    }
+    
+    private static void assertSameNetwork( int layers, Evaluation expected, Evaluation actual ) {
+        int output = layers - 1;
+        assertArrayEquals(
+            expected.getActivation(output).values,
+            actual.getActivation(output).values,
+            TOLERANCE
+        );
+        for (int layer = 0; layer < layers; ++layer) {
+            assertArrayEquals(
+                String.format("The orientations of layer %d differ.", layer),
+                expected.getOrientations(layer),
+                actual.getOrientations(layer)
+            );
+        }
+    }
+}
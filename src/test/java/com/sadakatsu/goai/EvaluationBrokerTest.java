@@ -0,0 +1,146 @@
+package com.sadakatsu.goai;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+public class EvaluationBrokerTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 1;
+    private static final int CHANNELS = 2;
+    private static final long SEED = 10L;
+    private static final long TIMEOUT_SECONDS = 30;
+    
+    @Test
+    public void fullBatchesAreDispatchedTogether() throws Exception {
+        try (
+            GoAi ai = build();
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai)
+                .maximumBatchSize(4)
+                .maximumWait(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build()
+        ) {
+            List<CompletableFuture<Evaluation>> futures = new ArrayList<>();
+            for (Game game : playGame(8)) {
+                futures.add(broker.submit(game));
+            }
+            for (CompletableFuture<Evaluation> future : futures) {
+                future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).release();
+            }
+            
+            assertEquals(2, broker.getBatches());
+            assertEquals(8, broker.getPositions());
+            assertEquals(4., broker.getAverageBatchSize(), 0.);
+        }
+    }
+    
+    @Test
+    public void aLoneRequestIsDispatchedAfterTheMaximumWait() throws Exception {
+        long maximumWaitMillis = 50;
+        try (
+            GoAi ai = build();
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai)
+                .maximumBatchSize(32)
+                .maximumWait(maximumWaitMillis, TimeUnit.MILLISECONDS)
+                .build()
+        ) {
+            long start = System.nanoTime();
+            Evaluation evaluation = broker.submit(playGame(1).get(0)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            long elapsed = System.nanoTime() - start;
+            evaluation.release();
+            
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(maximumWaitMillis));
+            assertEquals(1, broker.getBatches());
+            assertEquals(1, broker.getPositions());
+        }
+    }
+    
+    @Test
+    public void anInvalidPreviousEvaluationFailsOnlyItsOwnFuture() throws Exception {
+        List<Game> games = playGame(2);
+        try (
+            GoAi ai = build();
+            GoAi other = build();
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai)
+                .maximumBatchSize(2)
+                .maximumWait(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build()
+        ) {
+            Evaluation foreign = other.evaluate(games.get(0), false);
+            CompletableFuture<Evaluation> invalid = broker.submit(games.get(1), foreign);
+            CompletableFuture<Evaluation> first = broker.submit(games.get(0));
+            CompletableFuture<Evaluation> second = broker.submit(games.get(1));
+            
+            assertCause(IllegalArgumentException.class, invalid);
+            first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).release();
+            second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).release();
+            assertEquals(1, broker.getBatches());
+            assertEquals(2, broker.getPositions());
+            foreign.release();
+        }
+    }
+    
+    @Test
+    public void closingFailsThePendingFutures() throws Exception {
+        try (GoAi ai = build()) {
+            List<CompletableFuture<Evaluation>> futures = new ArrayList<>();
+            List<Game> games = playGame(3);
+            EvaluationBroker broker = EvaluationBroker.newBuilder(ai)
+                .maximumBatchSize(32)
+                .maximumWait(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+            for (Game game : games) {
+                futures.add(broker.submit(game));
+            }
+            
+            broker.close();
+            futures.add(broker.submit(games.get(0)));
+            for (CompletableFuture<Evaluation> future : futures) {
+                assertCause(IllegalStateException.class, future);
+            }
+            assertEquals(0, broker.getBatches());
+        }
+    }
+    
+    private static GoAi build() {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).seed(SEED).parallelism(1).build();
+    }
+    
+    // Returns the first positions of a seeded random game, each of which follows the one before it.
+    private static List<Game> playGame( int positions ) throws Exception {
+        Random random = new Random(SEED);
+        List<Game> games = new ArrayList<>();
+        Game game = Game.newBuilder(BOARD_SIZE).build();
+        while (games.size() < positions) {
+            games.add(game);
+            Game next;
+            do {
+                next = game.play(RandomGames.pickMove(game, random));
+            } while (next.isOver());
+            game = next;
+        }
+        return games;
+    }
+    
+    private static void assertCause(
+        Class<? extends Throwable> expected,
+        CompletableFuture<Evaluation> future
+    ) throws Exception {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).release();
+            fail(String.format("The future should have failed with %s.", expected.getSimpleName()));
+        } catch (ExecutionException e) {
+            assertEquals(expected, e.getCause().getClass());
+        }
+    }
+}
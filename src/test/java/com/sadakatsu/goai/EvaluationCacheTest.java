@@ -0,0 +1,170 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+public class EvaluationCacheTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 2;
+    private static final int CHANNELS = 4;
+    private static final long SEED = 10L;
+    private static final long BUDGET = 1L << 20;
+    private static final double TOLERANCE = 1e-12;
+    
+    private static final List<Coordinate> OPENING = Arrays.asList(
+        Coordinate.get(2, 2),
+        Coordinate.get(4, 3),
+        Coordinate.get(3, 4),
+        Coordinate.get(2, 4)
+    );
+    
+    @Test
+    public void symmetricFormsAreEvaluatedAsIfUncached() throws Exception {
+        Game original = play(OPENING, false, false);
+        Game rotated = play(OPENING, true, false);
+        Game inverted = play(OPENING, false, true);
+        assertEquals(new ZobristHash(original), new ZobristHash(rotated));
+        assertEquals(new ZobristHash(original), new ZobristHash(inverted));
+        
+        try (
+            GoAi cached = build(BUDGET);
+            GoAi uncached = build(0)
+        ) {
+            EvaluationCache cache = cached.getCache().get();
+            assertFalse(uncached.getCache().isPresent());
+            
+            assertSameScores(uncached, cached, original);
+            assertCounters(cache, 0, 1, 1);
+            
+            assertSameScores(uncached, cached, original);
+            assertCounters(cache, 1, 1, 1);
+            
+            // Another form shares the entry, so it is a miss that replaces the entry with its own Scores.
+            assertSameScores(uncached, cached, rotated);
+            assertCounters(cache, 1, 2, 1);
+            assertSameScores(uncached, cached, rotated);
+            assertCounters(cache, 2, 2, 1);
+            
+            assertSameScores(uncached, cached, inverted);
+            assertCounters(cache, 2, 3, 1);
+            assertSameScores(uncached, cached, original);
+            assertCounters(cache, 2, 4, 1);
+            assertEquals(0, cache.getEvictions());
+        }
+    }
+    
+    @Test
+    public void leastRecentlyUsedPositionsAreEvicted() throws Exception {
+        Game first = play(OPENING.subList(0, 1), false, false);
+        Game second = play(OPENING.subList(0, 2), false, false);
+        Game third = play(OPENING.subList(0, 3), false, false);
+        List<Score> firstScores = createScores(first);
+        List<Score> secondScores = createScores(second);
+        List<Score> thirdScores = createScores(third);
+        
+        long firstSize = measure(first, firstScores);
+        long secondSize = measure(second, secondScores);
+        long thirdSize = measure(third, thirdScores);
+        EvaluationCache cache = new EvaluationCache(firstSize + Math.max(secondSize, thirdSize));
+        
+        cache.store(new ZobristHash(first), firstScores);
+        cache.store(new ZobristHash(second), secondScores);
+        assertEquals(2, cache.getSize());
+        assertEquals(firstSize + secondSize, cache.getUsed());
+        
+        // Looking the first position up makes the second the least recently used.
+        assertEquals(firstScores, cache.lookup(new ZobristHash(first)));
+        cache.store(new ZobristHash(third), thirdScores);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(firstSize + thirdSize, cache.getUsed());
+        
+        assertNull(cache.lookup(new ZobristHash(second)));
+        assertEquals(firstScores, cache.lookup(new ZobristHash(first)));
+        assertEquals(thirdScores, cache.lookup(new ZobristHash(third)));
+        assertCounters(cache, 3, 1, 2);
+        
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getUsed());
+    }
+    
+    @Test
+    public void theNewestEntryIsKeptEvenOverBudget() throws Exception {
+        EvaluationCache cache = new EvaluationCache(1);
+        for (int moves = 1; moves <= OPENING.size(); ++moves) {
+            Game game = play(OPENING.subList(0, moves), false, false);
+            cache.store(new ZobristHash(game), createScores(game));
+            assertEquals(1, cache.getSize());
+            assertEquals(moves - 1, cache.getEvictions());
+        }
+    }
+    
+    private static GoAi build( long cacheBudget ) {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS)
+            .seed(SEED)
+            .parallelism(1)
+            .cacheBudget(cacheBudget)
+            .build();
+    }
+    
+    // Turning the board a quarter turn rotates every coordinate.  Passing first swaps the colours of all the stones
+    // and of the player to move, which inverts the position.
+    private static Game play( List<Coordinate> moves, boolean rotate, boolean invert ) throws Exception {
+        Game game = Game.newBuilder(BOARD_SIZE).build();
+        if (invert) {
+            game = game.play(PASS);
+        }
+        for (Coordinate move : moves) {
+            game = game.play(rotate ? Coordinate.get(move.getRow(), BOARD_SIZE + 1 - move.getColumn()) : move);
+        }
+        return game;
+    }
+    
+    private static void assertSameScores( GoAi uncached, GoAi cached, Game game ) {
+        Evaluation expected = uncached.evaluate(game, false);
+        Evaluation actual = cached.evaluate(game, false);
+        for (Move move : game.getLegalMoves()) {
+            Score first = expected.getScoreFor(move);
+            Score second = actual.getScoreFor(move);
+            assertEquals(move.toString(), first.getRawPlayerScore(), second.getRawPlayerScore(), TOLERANCE);
+            assertEquals(move.toString(), first.getRawOpponentScore(), second.getRawOpponentScore(), TOLERANCE);
+        }
+        expected.release();
+        actual.release();
+    }
+    
+    private static void assertCounters( EvaluationCache cache, long hits, long misses, int size ) {
+        assertEquals("hits", hits, cache.getHits());
+        assertEquals("misses", misses, cache.getMisses());
+        assertEquals("size", size, cache.getSize());
+    }
+    
+    private static List<Score> createScores( Game game ) {
+        List<Score> scores = new ArrayList<>();
+        double value = 0.;
+        for (Move move : game.getLegalMoves()) {
+            scores.add(Score.createFromRawScores(move, value, -value));
+            value += 0.25;
+        }
+        return scores;
+    }
+    
+    // Returns the estimated size of the position's entry by storing it alone in a cache with room to spare.
+    private static long measure( Game game, List<Score> scores ) {
+        EvaluationCache cache = new EvaluationCache(BUDGET);
+        cache.store(new ZobristHash(game), scores);
+        return cache.getUsed();
+    }
+}
@@ -0,0 +1,96 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.goai.GoAi.Evaluation;
+
+public class IncrementalEncodingTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 1;
+    private static final int CHANNELS = 2;
+    private static final long SEED = 10L;
+    private static final int GAMES = 20;
+    private static final int MAXIMUM_MOVES = 120;
+    
+    @Test
+    public void randomGamesEncodeIncrementallyAsFromScratch() throws Exception {
+        try (GoAi ai = build()) {
+            for (int seed = 0; seed < GAMES; ++seed) {
+                Random random = new Random(seed);
+                Game game = Game.newBuilder(BOARD_SIZE).build();
+                Evaluation evaluation = ai.evaluate(game, false);
+                for (int moves = 0; moves < MAXIMUM_MOVES; ++moves) {
+                    Game next = game.play(RandomGames.pickMove(game, random));
+                    if (next.isOver()) {
+                        break;
+                    }
+                    
+                    evaluation = advance(ai, evaluation, next);
+                    game = next;
+                }
+                evaluation.release();
+            }
+        }
+    }
+    
+    // Black captures at (3,2), then White could retake at (2,2) if not for ko.  White passes instead, which checks that
+    // the cells the capture made temporarily unplayable are restored by the next move even when it is a pass.
+    @Test
+    public void koEncodesIncrementallyAsFromScratch() throws Exception {
+        List<Move> moves = Arrays.asList(
+            Coordinate.get(1, 2),
+            Coordinate.get(4, 2),
+            Coordinate.get(2, 1),
+            Coordinate.get(3, 1),
+            Coordinate.get(2, 3),
+            Coordinate.get(3, 3),
+            Coordinate.get(5, 5),
+            Coordinate.get(2, 2),
+            Coordinate.get(3, 2),
+            PASS,
+            Coordinate.get(1, 5),
+            PASS,
+            Coordinate.get(5, 1)
+        );
+        
+        try (GoAi ai = build()) {
+            Game game = Game.newBuilder(BOARD_SIZE).build();
+            Evaluation evaluation = ai.evaluate(game, false);
+            for (Move move : moves) {
+                game = game.play(move);
+                evaluation = advance(ai, evaluation, game);
+            }
+            evaluation.release();
+        }
+    }
+    
+    private static GoAi build() {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).seed(SEED).parallelism(1).build();
+    }
+    
+    // Returns the Evaluation of next made from the previous one, after checking its input against encode().
+    private static Evaluation advance( GoAi ai, Evaluation previous, Game next ) throws Exception {
+        Evaluation evaluation = ai.evaluate(next, previous, false);
+        previous.release();
+        
+        Tensor expected = ai.createInputTensor();
+        ai.encode(next, next.getLegalMoves(), expected);
+        assertArrayEquals(
+            String.format("The incremental encoding differs from encode() after %d moves.", next.getMovesPlayed()),
+            expected.values,
+            evaluation.getInput().values,
+            0.
+        );
+        return evaluation;
+    }
+}
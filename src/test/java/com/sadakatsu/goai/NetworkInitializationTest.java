@@ -0,0 +1,61 @@
+package com.sadakatsu.goai;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sadakatsu.goai.GoAi.Neuron;
+
+public class NetworkInitializationTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 3;
+    private static final int CHANNELS = 6;
+    private static final long SEED = 10L;
+    private static final int PARALLELISM = 4;
+    
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    
+    // Each Neuron draws from its own stream, so the weights must not depend upon which thread drew them.  Saving and
+    // reopening the network must not change them either.
+    @Test
+    public void weightsDependOnlyOnTheSeed() throws Exception {
+        Path checkpoint = folder.getRoot().toPath().resolve("network.goai");
+        try (
+            GoAi synchronous = build(1);
+            GoAi parallel = build(PARALLELISM)
+        ) {
+            assertSameWeights(synchronous, parallel);
+            
+            parallel.save(checkpoint);
+            try (GoAi reopened = GoAi.newBuilder(checkpoint).parallelism(PARALLELISM).build()) {
+                assertEquals(SEED, reopened.getSeed());
+                assertSameWeights(synchronous, reopened);
+            }
+        }
+    }
+    
+    private static GoAi build( int parallelism ) {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).seed(SEED).parallelism(parallelism).build();
+    }
+    
+    private static void assertSameWeights( GoAi expected, GoAi actual ) {
+        Neuron[][] expectedNetwork = expected.getNetwork();
+        Neuron[][] actualNetwork = actual.getNetwork();
+        assertEquals(expectedNetwork.length, actualNetwork.length);
+        for (int layer = 0; layer < expectedNetwork.length; ++layer) {
+            assertEquals(expectedNetwork[layer].length, actualNetwork[layer].length);
+            for (int index = 0; index < expectedNetwork[layer].length; ++index) {
+                String label = String.format("Neuron %d of layer %d", index, layer);
+                Neuron first = expectedNetwork[layer][index];
+                Neuron second = actualNetwork[layer][index];
+                assertEquals(label, first.bias, second.bias, 0.);
+                assertArrayEquals(label, first.weights, second.weights, 0.);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.sadakatsu.goai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+
+// RandomGames picks uniformly random legal moves.  Passes are legal moves too, so seeded games include passes, and
+// small boards fill up quickly enough that they include captures.
+final class RandomGames {
+    private RandomGames() {}
+    
+    static Move pickMove( Game game, Random random ) {
+        List<Move> legalMoves = new ArrayList<>(game.getLegalMoves());
+        return legalMoves.get(random.nextInt(legalMoves.size()));
+    }
+}
@@ -0,0 +1,142 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.goai.GoAi.Evaluation;
+import com.sadakatsu.goai.ScoreRecommender.Relationship;
+
+public class ScoreRecommenderTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int HIDDEN_LAYERS = 2;
+    private static final int CHANNELS = 4;
+    private static final long SEED = 10L;
+    private static final int GAMES = 5;
+    private static final int MAXIMUM_MOVES = 60;
+    
+    @Test
+    public void bestRawScoreRecommenderMatchesAllPairsSelection() throws Exception {
+        checkRecommender(new BestRawScoreRecommender());
+    }
+    
+    @Test
+    public void fuzzyBestLocalInvariantRecommenderMatchesAllPairsSelection() throws Exception {
+        checkRecommender(new FuzzyBestLocalInvariantRecommender());
+    }
+    
+    private static void checkRecommender( ScoreRecommender recommender ) throws Exception {
+        try (GoAi ai = GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS).seed(SEED).parallelism(1).build()) {
+            for (int seed = 0; seed < GAMES; ++seed) {
+                Random random = new Random(seed);
+                Game game = Game.newBuilder(BOARD_SIZE).build();
+                for (int moves = 0; moves < MAXIMUM_MOVES && !game.isOver(); ++moves) {
+                    Evaluation evaluation = ai.evaluate(game, false);
+                    checkPosition(recommender, evaluation, random);
+                    evaluation.release();
+                    game = game.play(RandomGames.pickMove(game, random));
+                }
+            }
+        }
+    }
+    
+    // Every recommendation is checked against the reference three times: the second time, the Evaluation serves the
+    // selection it kept from the first, and the third time, it selects again after its comparison states are cleared.
+    private static void checkPosition(
+        ScoreRecommender recommender,
+        Evaluation evaluation,
+        Random random
+    ) throws Exception {
+        RecommenderComparisonState state = recommender.buildComparisonState(evaluation);
+        Set<Score> best = selectBestScores(recommender, state);
+        List<Score> scores = evaluation.getScores();
+        Score noWorseThan = scores.get(random.nextInt(scores.size()));
+        String label = evaluation.getGame().toString();
+        
+        for (int round = 0; round < 3; ++round) {
+            if (round == 2) {
+                evaluation.clearComparisonStates();
+            }
+            
+            assertEquals(label, best, recommender.recommendEquivalentGamePlays(evaluation));
+            assertWinner(label, recommender, state, best, recommender.recommendGamePlay(evaluation));
+            
+            Set<Score> resolutions = selectResolutionPlays(recommender, state, best, noWorseThan);
+            assertEquals(label, resolutions, recommender.recommendEquivalentResolutionPlays(evaluation, noWorseThan));
+            Optional<Score> resolution = recommender.recommendResolutionPlay(evaluation, noWorseThan);
+            assertWinner(label, recommender, state, resolutions, resolution);
+            
+            // Avoiding passes compares the Scores to a pass, and neither recommender looks past a Score's move.
+            Set<Score> plays = selectResolutionPlays(recommender, state, best, evaluation.getScoreFor(PASS));
+            assertWinner(label, recommender, state, plays, recommender.recommendGamePlayAvoidingPass(evaluation));
+        }
+    }
+    
+    // The best Scores are those of the legal moves that no other legal move beats.
+    private static Set<Score> selectBestScores( ScoreRecommender recommender, RecommenderComparisonState state ) {
+        ScoreTable table = state.getEvaluation().getScoreTable();
+        Set<Score> best = new HashSet<>();
+        for (int i = 0; i < table.getLegalCount(); ++i) {
+            int candidate = table.getLegalSlot(i);
+            boolean beaten = false;
+            for (int j = 0; j < table.getLegalCount() && !beaten; ++j) {
+                int opponent = table.getLegalSlot(j);
+                Relationship relationship = recommender.compareScores(table, opponent, candidate, state);
+                beaten = relationship == Relationship.FIRST_IS_BETTER_THAN_SECOND;
+            }
+            if (!beaten) {
+                best.add(table.getScore(candidate));
+            }
+        }
+        return best;
+    }
+    
+    // The resolution plays are the best Scores that are not passes and do not lose the tie to noWorseThan, or the best
+    // pass when there are none.
+    private static Set<Score> selectResolutionPlays(
+        ScoreRecommender recommender,
+        RecommenderComparisonState state,
+        Set<Score> best,
+        Score noWorseThan
+    ) {
+        Set<Score> resolutions = new HashSet<>();
+        for (Score score : best) {
+            if (score.getMove() != PASS && !recommender.doesFirstLoseTie(score, noWorseThan, state)) {
+                resolutions.add(score);
+            }
+        }
+        if (resolutions.isEmpty()) {
+            for (Score score : best) {
+                if (score.getMove() == PASS) {
+                    resolutions.add(score);
+                }
+            }
+        }
+        return resolutions;
+    }
+    
+    // A recommended Score must come from the candidates and must not lose the tie to any of them.
+    private static void assertWinner(
+        String label,
+        ScoreRecommender recommender,
+        RecommenderComparisonState state,
+        Set<Score> candidates,
+        Optional<Score> winner
+    ) {
+        assertEquals(label, !candidates.isEmpty(), winner.isPresent());
+        if (winner.isPresent()) {
+            assertTrue(label, candidates.contains(winner.get()));
+            for (Score candidate : candidates) {
+                assertFalse(label, recommender.doesFirstLoseTie(winner.get(), candidate, state));
+            }
+        }
+    }
+}
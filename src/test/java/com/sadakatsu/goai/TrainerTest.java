@@ -0,0 +1,218 @@
+package com.sadakatsu.goai;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+import com.sadakatsu.goai.GoAi.Evaluation;
+import com.sadakatsu.goai.GoAi.Neuron;
+
+public class TrainerTest {
+    private static final int BOARD_SIZE = 3;
+    private static final int HIDDEN_LAYERS = 1;
+    private static final int CHANNELS = 2;
+    private static final long SEED = 3L;
+    private static final int STEPS = 5;
+    private static final int PARALLELISM = 4;
+    private static final int BATCH_SIZE = 6;
+    
+    // The central difference's own error is proportional to the square of the step.
+    private static final double STEP = 1e-6;
+    private static final double TOLERANCE = 1e-5;
+    
+    // Splitting the batch across tiles only changes the order in which the examples' gradients are summed.
+    private static final double ROUNDING = 1e-12;
+    
+    @Test
+    public void perNeuronGradientsMatchCentralDifferences() throws Exception {
+        checkGradients(ConvolutionBackend.PER_NEURON);
+    }
+    
+    @Test
+    public void im2ColGradientsMatchCentralDifferences() throws Exception {
+        checkGradients(ConvolutionBackend.IM2COL);
+    }
+    
+    @Test
+    public void sgdReducesTheLoss() throws Exception {
+        checkTraining(Optimizer.SGD, 2e-4);
+    }
+    
+    @Test
+    public void adamReducesTheLoss() throws Exception {
+        checkTraining(Optimizer.ADAM, 1e-2);
+    }
+    
+    @Test
+    public void sgdIsIndependentOfParallelism() throws Exception {
+        checkParallelTraining(Optimizer.SGD, 2e-4);
+    }
+    
+    @Test
+    public void adamIsIndependentOfParallelism() throws Exception {
+        checkParallelTraining(Optimizer.ADAM, 1e-2);
+    }
+    
+    private static void checkGradients( ConvolutionBackend backend ) throws Exception {
+        try (GoAi ai = build(backend)) {
+            TrainingExample example = createExample();
+            Gradient gradient = new Gradient(ai.getNetwork());
+            computeLoss(ai, example, gradient);
+            
+            Neuron[][] network = ai.getNetwork();
+            for (int layer = 0; layer < network.length; ++layer) {
+                for (int index = 0; index < network[layer].length; ++index) {
+                    Neuron neuron = network[layer][index];
+                    int slot = gradient.getIndex(layer, index);
+                    
+                    String label = String.format("The bias of Neuron %d of layer %d", index, layer);
+                    double expected = estimateGradient(ai, example, neuron, -1);
+                    assertClose(label, expected, gradient.biases[slot]);
+                    
+                    for (int weight = 0; weight < neuron.weights.length; ++weight) {
+                        label = String.format("Weight %d of Neuron %d of layer %d", weight, index, layer);
+                        expected = estimateGradient(ai, example, neuron, weight);
+                        assertClose(label, expected, gradient.weights[slot][weight]);
+                    }
+                }
+            }
+        }
+    }
+    
+    // Nudges the weight, or the bias when the weight is -1, each way and returns the slope of the loss between them.
+    private static double estimateGradient(
+        GoAi ai,
+        TrainingExample example,
+        Neuron neuron,
+        int weight
+    ) throws Exception {
+        double original = weight < 0 ? neuron.bias : neuron.weights[weight];
+        double[] losses = new double[2];
+        for (int side = 0; side < 2; ++side) {
+            setParameter(ai, neuron, weight, side == 0 ? original + STEP : original - STEP);
+            losses[side] = computeLoss(ai, example, new Gradient(ai.getNetwork()));
+        }
+        setParameter(ai, neuron, weight, original);
+        return (losses[0] - losses[1]) / (2 * STEP);
+    }
+    
+    private static void setParameter( GoAi ai, Neuron neuron, int weight, double value ) {
+        if (weight < 0) {
+            neuron.bias = value;
+        } else {
+            neuron.weights[weight] = value;
+        }
+        neuron.refreshOrientedWeights();
+        ai.refreshWeights();
+    }
+    
+    private static double computeLoss( GoAi ai, TrainingExample example, Gradient gradient ) throws Exception {
+        Evaluation workspace = ai.prepareTrainingExample(example.getGame(), example.getTargets());
+        ai.runNetwork(new Evaluation[] { workspace }, false);
+        double loss = ai.backpropagate(workspace, gradient);
+        workspace.release();
+        return loss;
+    }
+    
+    private static void assertClose( String label, double expected, double actual ) {
+        double scale = Math.max(1., Math.abs(expected) + Math.abs(actual));
+        assertEquals(label, expected, actual, TOLERANCE * scale);
+    }
+    
+    private static void checkTraining( Optimizer optimizer, double learningRate ) throws Exception {
+        try (GoAi ai = build(ConvolutionBackend.PER_NEURON)) {
+            Trainer trainer = Trainer.newBuilder(ai).optimizer(optimizer).learningRate(learningRate).build();
+            List<TrainingExample> batch = Collections.singletonList(createExample());
+            
+            double first = trainer.train(batch);
+            double last = first;
+            for (int step = 1; step < STEPS; ++step) {
+                last = trainer.train(batch);
+            }
+            String message = String.format("%s did not reduce the loss from %g to %g.", optimizer, first, last);
+            assertTrue(message, last < first);
+        }
+    }
+    
+    // Each tile of the parallel Trainer backpropagates part of the batch into its own Gradient, and update() sums the
+    // tiles' Gradients, so the steps must match those of a Trainer that backpropagates the whole batch on one thread.
+    private static void checkParallelTraining( Optimizer optimizer, double learningRate ) throws Exception {
+        List<TrainingExample> batch = createBatch();
+        try (
+            GoAi synchronous = build(ConvolutionBackend.PER_NEURON, 1);
+            GoAi parallel = build(ConvolutionBackend.PER_NEURON, PARALLELISM)
+        ) {
+            Trainer first = Trainer.newBuilder(synchronous).optimizer(optimizer).learningRate(learningRate).build();
+            Trainer second = Trainer.newBuilder(parallel).optimizer(optimizer).learningRate(learningRate).build();
+            for (int step = 0; step < STEPS; ++step) {
+                double expected = first.train(batch);
+                double actual = second.train(batch);
+                assertEquals(String.format("The loss of step %d", step), expected, actual, ROUNDING * expected);
+            }
+            
+            Neuron[][] expectedNetwork = synchronous.getNetwork();
+            Neuron[][] actualNetwork = parallel.getNetwork();
+            for (int layer = 0; layer < expectedNetwork.length; ++layer) {
+                for (int index = 0; index < expectedNetwork[layer].length; ++index) {
+                    String label = String.format("Neuron %d of layer %d", index, layer);
+                    Neuron expected = expectedNetwork[layer][index];
+                    Neuron actual = actualNetwork[layer][index];
+                    assertEquals(label, expected.bias, actual.bias, ROUNDING);
+                    assertArrayEquals(label, expected.weights, actual.weights, ROUNDING);
+                }
+            }
+        }
+    }
+    
+    private static GoAi build( ConvolutionBackend backend ) {
+        return build(backend, 1);
+    }
+    
+    private static GoAi build( ConvolutionBackend backend, int parallelism ) {
+        return GoAi.newBuilder(BOARD_SIZE, HIDDEN_LAYERS, CHANNELS)
+            .seed(SEED)
+            .backend(backend)
+            .parallelism(parallelism)
+            .build();
+    }
+    
+    // Every legal move of a position with a stone on the board is given a seeded random target.
+    private static TrainingExample createExample() throws Exception {
+        Random random = new Random(SEED);
+        Game game = Game.newBuilder(BOARD_SIZE).build().play(Coordinate.get(2, 2));
+        List<Score> targets = new ArrayList<>();
+        for (Move move : game.getLegalMoves()) {
+            targets.add(Score.createFromRawScores(move, random.nextGaussian(), random.nextGaussian()));
+        }
+        return new TrainingExample(game, targets);
+    }
+    
+    // The positions of a seeded random game, each with seeded random targets for all of its legal moves.
+    private static List<TrainingExample> createBatch() throws Exception {
+        Random random = new Random(SEED);
+        List<TrainingExample> batch = new ArrayList<>();
+        Game game = Game.newBuilder(BOARD_SIZE).build();
+        while (batch.size() < BATCH_SIZE) {
+            List<Score> targets = new ArrayList<>();
+            for (Move move : game.getLegalMoves()) {
+                targets.add(Score.createFromRawScores(move, random.nextGaussian(), random.nextGaussian()));
+            }
+            batch.add(new TrainingExample(game, targets));
+            
+            Game next;
+            do {
+                next = game.play(RandomGames.pickMove(game, random));
+            } while (next.isOver());
+            game = next;
+        }
+        return batch;
+    }
+}
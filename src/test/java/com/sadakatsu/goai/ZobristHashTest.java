@@ -0,0 +1,87 @@
+package com.sadakatsu.goai;
+
+import static com.sadakatsu.go.domain.Pass.PASS;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sadakatsu.go.domain.Coordinate;
+import com.sadakatsu.go.domain.Game;
+import com.sadakatsu.go.domain.Move;
+
+public class ZobristHashTest {
+    private static final int BOARD_SIZE = 5;
+    private static final int GAMES = 20;
+    private static final int MAXIMUM_MOVES = 120;
+    
+    @Test
+    public void advancingMatchesHashingTheNextGame() throws Exception {
+        int tried = 0;
+        for (int seed = 0; seed < GAMES; ++seed) {
+            Random random = new Random(seed);
+            Game game = Game.newBuilder(BOARD_SIZE).build();
+            for (int moves = 0; !game.isOver() && moves < MAXIMUM_MOVES; ++moves) {
+                Move move = RandomGames.pickMove(game, random);
+                Game next = game.play(move);
+                
+                // FuzzyBestLocalInvariantRecommender canonicalizes the parent first, so both paths are covered.
+                ZobristHash parent = new ZobristHash(game);
+                if (random.nextBoolean()) {
+                    parent.canonicalize();
+                }
+                
+                ZobristHash expected = new ZobristHash(next);
+                assertSameHash(expected, parent.advance(next));
+                
+                ZobristHash advanced = parent.tryAdvance(move);
+                if (advanced != null) {
+                    assertSameHash(expected, advanced);
+                    ++tried;
+                }
+                game = next;
+            }
+        }
+        assertTrue("No move could be advanced without its Game.", tried > 0);
+    }
+    
+    @Test
+    public void tryAdvanceDeclinesPasses() throws Exception {
+        Game game = Game.newBuilder(BOARD_SIZE).build().play(Coordinate.get(3, 3));
+        assertNull(new ZobristHash(game).tryAdvance(PASS));
+    }
+    
+    @Test
+    public void tryAdvanceDeclinesCaptures() throws Exception {
+        Game game = Game.newBuilder(BOARD_SIZE).build()
+            .play(Coordinate.get(2, 1))
+            .play(Coordinate.get(1, 1));
+        Coordinate capture = Coordinate.get(1, 2);
+        assertNull(new ZobristHash(game).tryAdvance(capture));
+        
+        Game next = game.play(capture);
+        assertSameHash(new ZobristHash(next), new ZobristHash(game).advance(next));
+    }
+    
+    @Test
+    public void tryAdvanceDeclinesSuicides() throws Exception {
+        Game game = Game.newBuilder(BOARD_SIZE).build()
+            .play(Coordinate.get(5, 5))
+            .play(Coordinate.get(1, 2))
+            .play(Coordinate.get(4, 5))
+            .play(Coordinate.get(2, 1));
+        Coordinate suicide = Coordinate.get(1, 1);
+        assertFalse(game.getLegalMoves().contains(suicide));
+        assertNull(new ZobristHash(game).tryAdvance(suicide));
+    }
+    
+    private static void assertSameHash( ZobristHash expected, ZobristHash actual ) {
+        assertEquals(expected.getOriginalHash(), actual.getOriginalHash());
+        assertEquals(expected.getCanonicalHash(), actual.getCanonicalHash());
+        assertEquals(expected.getCanonicalIndex(), actual.getCanonicalIndex());
+        assertEquals(expected.getOriginalPlayer(), actual.getOriginalPlayer());
+        assertEquals(expected.getCanonicalPlayer(), actual.getCanonicalPlayer());
+        assertTrue(expected.exactlyEquals(actual));
+    }
+}